@@ -1,5 +1,8 @@
 package com.template;
 
+import com.template.flows.ListTransfersFlow;
+import com.template.flows.TransferPage;
+import com.template.flows.TransferSummary;
 import net.corda.client.rpc.CordaRPCClient;
 import net.corda.core.messaging.CordaRPCOps;
 import net.corda.core.node.NodeInfo;
@@ -18,8 +21,9 @@ import static net.corda.core.utilities.NetworkHostAndPort.parse;
  */
 public class Client {
     private static final Logger logger = LoggerFactory.getLogger(Client.class);
+    private static final int PAGE_SIZE = 200;
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         // Create an RPC connection to the node.
         if (args.length != 3) throw new IllegalArgumentException("Usage: Client <node address> <rpc username> <rpc password>");
         final NetworkHostAndPort nodeAddress = parse(args[0]);
@@ -32,5 +36,16 @@ public class Client {
         // For example, here we print the nodes on the network.
         final List<NodeInfo> nodes = proxy.networkMapSnapshot();
         logger.info("{}", nodes);
+
+        // And the transfers in the vault, a page of flat summaries at a time rather than as full StateAndRefs.
+        TransferPage page;
+        int pageNumber = 1;
+        do {
+            page = proxy.startFlowDynamic(ListTransfersFlow.class, ListTransfersFlow.Status.ANY, pageNumber++, PAGE_SIZE).getReturnValue().get();
+            for (TransferSummary transfer : page.getTransfers()) {
+                logger.info("{} {} -> {} {} {} {}", transfer.getUid(), transfer.getRequester(), transfer.getIssuer(), transfer.getAmount(),
+                        transfer.getApproved() ? "approved" : "pending", transfer.getTitle());
+            }
+        } while (page.hasMore());
     }
 }
\ No newline at end of file
@@ -0,0 +1,179 @@
+package com.template.audit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.template.contracts.TemplateContract;
+import net.corda.core.crypto.SecureHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Replays an export written by TransactionExport against the rules of TemplateContract, so that third parties can
+ * check that every past transfer obeyed them. Records are read in batches and each batch is verified across all
+ * cores with fork/join.
+ *
+ * A first pass keeps a 64-bit digest of every output of the export, by reference, so that each input and reference
+ * state can be checked to be the output it claims to be: memory use grows with the number of outputs, at about a
+ * hundred bytes each, and otherwise with the batch size.
+ *
+ * Exits with status 1 and reports the first failing transaction, in file order, if any.
+ */
+public class HistoryVerifier {
+    private static final Logger logger = LoggerFactory.getLogger(HistoryVerifier.class);
+    /** Records read and verified at a time. */
+    static final int BATCH_SIZE = 16384;
+    /** Records below which a task verifies them itself rather than splitting. */
+    static final int THRESHOLD = 256;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /** A transaction that broke the rules. */
+    static class Failure {
+        final long line;
+        final String id;
+        final String reason;
+
+        Failure(long line, String id, String reason) {
+            this.line = line;
+            this.id = id;
+            this.reason = reason;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) throw new IllegalArgumentException("Usage: HistoryVerifier <export file>");
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        AtomicReference<Failure> firstFailure = new AtomicReference<>();
+        long verified = 0;
+        long started = System.nanoTime();
+        Map<String, Long> outputs;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            outputs = indexOutputs(reader);
+        }
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            String line;
+            while (firstFailure.get() == null) {
+                batch.clear();
+                while (batch.size() < BATCH_SIZE && (line = reader.readLine()) != null) batch.add(line);
+                if (batch.isEmpty()) break;
+                pool.invoke(new VerifyTask(batch, verified, 0, batch.size(), outputs, firstFailure));
+                verified += batch.size();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        double seconds = Math.max(1, System.nanoTime() - started) / (double) TimeUnit.SECONDS.toNanos(1);
+        logger.info("Verified {} transactions in {} s ({} tx/s) on {} cores", verified, String.format("%.2f", seconds),
+                Math.round(verified / seconds), pool.getParallelism());
+        Failure failure = firstFailure.get();
+        if (failure != null) {
+            logger.error("First failing transaction {} at line {}: {}", failure.id, failure.line, failure.reason);
+            System.exit(1);
+        }
+        logger.info("Every transaction obeys TemplateContract");
+    }
+
+    /**
+     * Returns the digest of every output of the records read from READER, by reference. Records that cannot be read
+     * are skipped, and reported by the verification.
+     */
+    static Map<String, Long> indexOutputs(BufferedReader reader) throws IOException {
+        Map<String, Long> outputs = new HashMap<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            JsonNode record;
+            try {
+                record = mapper.readTree(line);
+            } catch (IOException e) {
+                continue;
+            }
+            String id = record.path("id").asText();
+            JsonNode outputNodes = record.path("outputs");
+            for (int i = 0; i < outputNodes.size(); i++) outputs.put(TransactionRecords.ref(id, i), digest(outputNodes.get(i)));
+        }
+        return outputs;
+    }
+
+    // States are encoded the same way wherever they appear, so equal states have equal digests.
+    private static long digest(JsonNode state) {
+        return ByteBuffer.wrap(SecureHash.sha256(state.toString()).getBytes()).getLong();
+    }
+
+    // Checks that the states under STATESFIELD of RECORD are the outputs named under REFSFIELD.
+    private static void checkRefs(JsonNode record, String refsField, String statesField, String label, Map<String, Long> outputs) {
+        JsonNode refs = record.path(refsField);
+        JsonNode states = record.path(statesField);
+        if (refs.size() != states.size()) throw new IllegalArgumentException(label + " states and references do not match");
+        for (int i = 0; i < refs.size(); i++) {
+            Long expected = outputs.get(refs.get(i).asText());
+            if (expected == null) throw new IllegalArgumentException(label + " " + refs.get(i).asText() + " is not an output of the export");
+            if (expected != digest(states.get(i))) throw new IllegalArgumentException(label + " " + refs.get(i).asText() + " does not match the output it refers to");
+        }
+    }
+
+    /** Verifies records FROM to TO of a batch starting at line OFFSET + 1, splitting the range while it is large. */
+    static class VerifyTask extends RecursiveAction {
+        private final List<String> batch;
+        private final long offset;
+        private final int from;
+        private final int to;
+        private final Map<String, Long> outputs;
+        private final AtomicReference<Failure> firstFailure;
+
+        VerifyTask(List<String> batch, long offset, int from, int to, Map<String, Long> outputs, AtomicReference<Failure> firstFailure) {
+            this.batch = batch;
+            this.offset = offset;
+            this.from = from;
+            this.to = to;
+            this.outputs = outputs;
+            this.firstFailure = firstFailure;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new VerifyTask(batch, offset, from, middle, outputs, firstFailure), new VerifyTask(batch, offset, middle, to, outputs, firstFailure));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                long line = offset + i + 1;
+                Failure known = firstFailure.get();
+                // Only a failure earlier in the file than any found so far is worth finding.
+                if (known != null && known.line < line) return;
+                String id = null;
+                try {
+                    JsonNode record = mapper.readTree(batch.get(i));
+                    id = record.path("id").asText();
+                    TemplateContract.verify(TransactionRecords.decode(record));
+                    checkRefs(record, "inputRefs", "inputs", "Input", outputs);
+                    checkRefs(record, "referenceRefs", "references", "Reference", outputs);
+                } catch (Exception e) {
+                    report(new Failure(line, id, e.getMessage() == null ? e.toString() : e.getMessage()));
+                    return;
+                }
+            }
+        }
+
+        private void report(Failure failure) {
+            firstFailure.accumulateAndGet(failure, (known, found) -> known == null || found.line < known.line ? found : known);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.template.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.template.flows.ExportedTransaction;
+import com.template.flows.GetTransactionsFlow;
+import com.template.flows.TransactionBatch;
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.messaging.CordaRPCOps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+
+import static net.corda.core.utilities.NetworkHostAndPort.parse;
+
+/**
+ * Exports every transaction of our contract known to a node, in the format of TransactionRecords, for
+ * HistoryVerifier to replay. Run it against the observer node, which records every finalized transfer.
+ *
+ * The history is fetched a batch at a time with GetTransactionsFlow and written as it comes, so memory use is bounded
+ * by the batch size rather than by the size of the ledger.
+ */
+public class TransactionExport {
+    private static final Logger logger = LoggerFactory.getLogger(TransactionExport.class);
+    private static final int PAGE_SIZE = 1000;
+
+    public static void main(String[] args) throws IOException, ExecutionException, InterruptedException {
+        if (args.length != 4) throw new IllegalArgumentException("Usage: TransactionExport <node address> <rpc username> <rpc password> <output file>");
+        final CordaRPCClient client = new CordaRPCClient(parse(args[0]));
+        try (CordaRPCConnection connection = client.start(args[1], args[2])) {
+            long exported = export(connection.getProxy(), args[3]);
+            logger.info("Exported {} transactions to {}", exported, args[3]);
+        }
+    }
+
+    private static long export(CordaRPCOps proxy, String path) throws IOException, ExecutionException, InterruptedException {
+        ObjectMapper mapper = new ObjectMapper();
+        long exported = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8)) {
+            SecureHash after = null;
+            do {
+                TransactionBatch batch = proxy.startFlowDynamic(GetTransactionsFlow.class, after, PAGE_SIZE).getReturnValue().get();
+                for (ExportedTransaction transaction : batch.getTransactions()) {
+                    writer.write(mapper.writeValueAsString(TransactionRecords.encode(mapper, transaction)));
+                    writer.newLine();
+                    exported++;
+                }
+                after = batch.getLast();
+            } while (after != null);
+        }
+        return exported;
+    }
+}
@@ -0,0 +1,211 @@
+package com.template.audit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.template.contracts.TemplateContract;
+import com.template.flows.ExportedTransaction;
+import com.template.states.BudgetState;
+import com.template.states.DrawdownState;
+import com.template.states.PeriodRootState;
+import com.template.states.TransferState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.CommandData;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.crypto.Crypto;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.AnonymousParty;
+import net.corda.core.identity.CordaX500Name;
+
+import java.security.PublicKey;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One line of NDJSON per transaction of our contract, as written by TransactionExport and read by HistoryVerifier.
+ * Input and reference states are embedded, so that every line can be verified on its own, next to the references
+ * "txhash(index)" of the outputs they were, so that they can be checked against the records of those. Keys are Base64
+ * X.509 encodings.
+ */
+public final class TransactionRecords {
+    private TransactionRecords() {
+    }
+
+    /** Returns the record of TRANSACTION, checked at its time if known. Unresolved inputs and references are null. */
+    public static ObjectNode encode(ObjectMapper mapper, ExportedTransaction transaction) {
+        ObjectNode record = mapper.createObjectNode();
+        record.put("id", transaction.getId().toString());
+        record.put("time", transaction.getTime() == null ? null : transaction.getTime().toString());
+        ArrayNode commandNodes = record.putArray("commands");
+        for (Command<?> command : transaction.getCommands()) {
+            ObjectNode commandNode = commandNodes.addObject();
+            commandNode.put("type", command.getValue().getClass().getSimpleName());
+            ArrayNode signers = commandNode.putArray("signers");
+            command.getSigners().forEach(key -> signers.add(encodeKey(key)));
+            if (command.getValue() instanceof TemplateContract.Commands.Approve) {
+                TemplateContract.Commands.Approve approve = (TemplateContract.Commands.Approve) command.getValue();
+                if (approve.getUid() != null) {
+                    commandNode.put("uid", approve.getUid());
+                    commandNode.put("amount", approve.getAmount());
+                    commandNode.set("issuer", encodeParty(mapper, approve.getIssuer()));
+                    commandNode.set("requester", encodeParty(mapper, approve.getRequester()));
+                    commandNode.put("requestDate", approve.getRequestDate().toString());
+                }
+            } else if (command.getValue() instanceof TemplateContract.Commands.DrawBudget) {
+                TemplateContract.Commands.DrawBudget draw = (TemplateContract.Commands.DrawBudget) command.getValue();
+                commandNode.put("uid", draw.getUid());
+                commandNode.put("amount", draw.getAmount());
+            }
+        }
+        ArrayNode inputRefNodes = record.putArray("inputRefs");
+        transaction.getInputRefs().forEach(ref -> inputRefNodes.add(ref(ref.getTxhash().toString(), ref.getIndex())));
+        ArrayNode inputNodes = record.putArray("inputs");
+        transaction.getInputs().forEach(state -> inputNodes.add(encodeState(mapper, state)));
+        ArrayNode outputNodes = record.putArray("outputs");
+        transaction.getOutputs().forEach(state -> outputNodes.add(encodeState(mapper, state)));
+        ArrayNode referenceRefNodes = record.putArray("referenceRefs");
+        transaction.getReferenceRefs().forEach(ref -> referenceRefNodes.add(ref(ref.getTxhash().toString(), ref.getIndex())));
+        ArrayNode referenceNodes = record.putArray("references");
+        transaction.getReferences().forEach(state -> referenceNodes.add(encodeState(mapper, state)));
+        return record;
+    }
+
+    /** Returns how records refer to output INDEX of the transaction with id ID, as StateRef prints it. */
+    public static String ref(String id, int index) {
+        return id + "(" + index + ")";
+    }
+
+    /** Returns the transaction components of RECORD, to be checked with TemplateContract.verify. */
+    public static TemplateContract.Components decode(JsonNode record) {
+        List<Command<CommandData>> commands = new ArrayList<>();
+        for (JsonNode commandNode : record.path("commands")) {
+            List<PublicKey> signers = new ArrayList<>();
+            commandNode.path("signers").forEach(key -> signers.add(decodeKey(key.asText())));
+            commands.add(new Command<>(decodeCommand(commandNode), signers));
+        }
+        List<ContractState> inputs = new ArrayList<>();
+        record.path("inputs").forEach(state -> inputs.add(decodeState(state)));
+        List<ContractState> outputs = new ArrayList<>();
+        record.path("outputs").forEach(state -> outputs.add(decodeState(state)));
+        List<ContractState> references = new ArrayList<>();
+        record.path("references").forEach(state -> references.add(decodeState(state)));
+        JsonNode time = record.path("time");
+        // Transactions whose time the node no longer knows are checked without their time windows, and approvals made
+        // before commands described their transfer by the rules they were notarised under.
+        return new TemplateContract.Components(commands, inputs, outputs, references, time.isTextual() ? Instant.parse(time.asText()) : null, true);
+    }
+
+    private static CommandData decodeCommand(JsonNode node) {
+        String type = node.path("type").asText();
+        switch (type) {
+            case "Request": return new TemplateContract.Commands.Request();
+            case "Approve":
+                // Approvals made before commands described their transfer have no fields.
+                if (!node.has("uid")) return new TemplateContract.Commands.Approve();
+                return new TemplateContract.Commands.Approve(node.path("uid").asText(), node.path("amount").asLong(),
+                        decodeParty(node.path("issuer")), decodeParty(node.path("requester")), Instant.parse(node.path("requestDate").asText()));
+            case "Decline": return new TemplateContract.Commands.Decline();
+            case "CreateBudget": return new TemplateContract.Commands.CreateBudget();
+            case "ConsolidateBudget": return new TemplateContract.Commands.ConsolidateBudget();
+            case "DrawBudget": return new TemplateContract.Commands.DrawBudget(node.path("uid").asText(), node.path("amount").asLong());
+            case "PublishRoot": return new TemplateContract.Commands.PublishRoot();
+            default: throw new IllegalArgumentException("Unknown command " + type);
+        }
+    }
+
+    private static JsonNode encodeState(ObjectMapper mapper, ContractState state) {
+        if (state == null) return mapper.nullNode();
+        ObjectNode node = mapper.createObjectNode();
+        if (state instanceof TransferState) {
+            TransferState transfer = (TransferState) state;
+            node.put("type", "TransferState");
+            node.put("uid", transfer.getUid());
+            node.set("issuer", encodeParty(mapper, transfer.getIssuer()));
+            node.set("requester", encodeParty(mapper, transfer.getRequester()));
+            ArrayNode allNodes = node.putArray("allNodes");
+            transfer.getAllNodes().forEach(party -> allNodes.add(encodeParty(mapper, party)));
+            node.put("amount", transfer.getAmount());
+            node.put("requestDate", transfer.getRequestDate().toString());
+            node.put("validUntil", transfer.getValidUntil().toString());
+            node.put("approve", transfer.getApprove());
+            node.put("title", transfer.getTitle());
+            node.put("description", transfer.getDescription());
+        } else if (state instanceof BudgetState) {
+            BudgetState shard = (BudgetState) state;
+            node.put("type", "BudgetState");
+            node.set("issuer", encodeParty(mapper, shard.getIssuer()));
+            node.put("envelopeId", shard.getEnvelopeId());
+            node.put("shardIndex", shard.getShardIndex());
+            node.put("shardCount", shard.getShardCount());
+            node.put("total", shard.getTotal());
+            node.put("remaining", shard.getRemaining());
+        } else if (state instanceof DrawdownState) {
+            DrawdownState receipt = (DrawdownState) state;
+            node.put("type", "DrawdownState");
+            node.set("issuer", encodeParty(mapper, receipt.getIssuer()));
+            node.put("envelopeId", receipt.getEnvelopeId());
+            node.put("uid", receipt.getUid());
+            node.put("amount", receipt.getAmount());
+        } else if (state instanceof PeriodRootState) {
+            PeriodRootState root = (PeriodRootState) state;
+            node.put("type", "PeriodRootState");
+            node.set("issuer", encodeParty(mapper, root.getIssuer()));
+            node.put("period", root.getPeriod());
+            node.put("root", root.getRoot().toString());
+            node.put("count", root.getCount());
+        } else {
+            node.put("type", state.getClass().getName());
+        }
+        return node;
+    }
+
+    private static ContractState decodeState(JsonNode node) {
+        if (node.isNull()) throw new IllegalArgumentException("Unresolved state");
+        switch (node.path("type").asText()) {
+            case "TransferState":
+                List<AbstractParty> allNodes = new ArrayList<>();
+                node.path("allNodes").forEach(party -> allNodes.add(decodeParty(party)));
+                return new TransferState(decodeParty(node.path("issuer")), decodeParty(node.path("requester")), allNodes,
+                        node.path("amount").asLong(), Instant.parse(node.path("requestDate").asText()),
+                        Instant.parse(node.path("validUntil").asText()), node.path("approve").asBoolean(),
+                        node.path("uid").asText(), node.path("title").asText(), node.path("description").asText());
+            case "BudgetState":
+                return new BudgetState(decodeParty(node.path("issuer")), node.path("envelopeId").asText(),
+                        node.path("shardIndex").asInt(), node.path("shardCount").asInt(),
+                        node.path("total").asLong(), node.path("remaining").asLong());
+            case "DrawdownState":
+                return new DrawdownState(decodeParty(node.path("issuer")), node.path("envelopeId").asText(),
+                        node.path("uid").asText(), node.path("amount").asLong());
+            case "PeriodRootState":
+                return new PeriodRootState(decodeParty(node.path("issuer")), node.path("period").asText(),
+                        SecureHash.parse(node.path("root").asText()), node.path("count").asInt());
+            default:
+                throw new IllegalArgumentException("Unknown state " + node.path("type").asText());
+        }
+    }
+
+    private static JsonNode encodeParty(ObjectMapper mapper, AbstractParty party) {
+        ObjectNode node = mapper.createObjectNode();
+        CordaX500Name name = party.nameOrNull();
+        node.put("name", name == null ? null : name.toString());
+        node.put("key", encodeKey(party.getOwningKey()));
+        return node;
+    }
+
+    // Parties compare by key, so the key alone is enough to check the rules.
+    private static AbstractParty decodeParty(JsonNode node) {
+        return new AnonymousParty(decodeKey(node.path("key").asText()));
+    }
+
+    private static String encodeKey(PublicKey key) {
+        return Base64.getEncoder().encodeToString(key.getEncoded());
+    }
+
+    private static PublicKey decodeKey(String key) {
+        return Crypto.decodePublicKey(Base64.getDecoder().decode(key));
+    }
+}
@@ -0,0 +1,339 @@
+package com.template.ingest;
+
+import com.template.flows.ListTransfersFlow;
+import com.template.flows.RequestFlow;
+import com.template.flows.TransferPage;
+import com.template.flows.TransferSummary;
+import com.template.states.TransferState;
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.UnexpectedFlowEndException;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.transactions.SignedTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static net.corda.core.utilities.NetworkHostAndPort.parse;
+
+/**
+ * Starts a RequestFlow for every line of a CSV file of issuer, title, description and amount, keeping at most a
+ * bounded number of flows in flight over RPC, and prints a throughput summary at the end.
+ *
+ * Progress is kept in a checkpoint file next to the CSV, so that running again after an interruption submits only
+ * the lines not done yet. Lines are known by their contents there, so the CSV may be edited between runs, e.g. to
+ * correct rejected lines. A line whose outcome was never learnt, because the run stopped or the RPC call failed or
+ * timed out, is in doubt: the next run takes it as done if one of our requests, whether still pending or since
+ * approved or declined, has the same contents and is not already recorded for another line, and only submits it
+ * again otherwise.
+ *
+ * Fields may be quoted, with "" for a quote inside them; a request cannot span lines. A first line starting with
+ * "issuer" is taken as a header.
+ */
+public class BulkIngest {
+    private static final Logger logger = LoggerFactory.getLogger(BulkIngest.class);
+    /** Flows in flight when no limit is given. */
+    static final int DEFAULT_IN_FLIGHT = 16;
+    private static final int SUMMARY_PAGE_SIZE = 1000;
+
+    /** One request line of the CSV. */
+    static class Request {
+        final CordaX500Name issuer;
+        final String title;
+        final String description;
+        final long amount;
+
+        Request(CordaX500Name issuer, String title, String description, long amount) {
+            this.issuer = issuer;
+            this.title = title;
+            this.description = description;
+            this.amount = amount;
+        }
+
+        /** Returns the request of the CSV FIELDS, checked against the rules RequestFlow would fail on. */
+        static Request parse(List<String> fields) {
+            if (fields.size() != 4) throw new IllegalArgumentException("Expected issuer, title, description and amount");
+            long amount;
+            try {
+                amount = Long.parseLong(fields.get(3).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid amount " + fields.get(3));
+            }
+            if (amount <= 0) throw new IllegalArgumentException("Invalid request value!");
+            if (fields.get(1).isEmpty() || fields.get(2).isEmpty()) throw new IllegalArgumentException("Title and Description cannot be empty!");
+            return new Request(CordaX500Name.parse(fields.get(0).trim()), fields.get(1), fields.get(2), amount);
+        }
+
+        /** Identifies requests with the same contents. */
+        String key() {
+            return key(issuer.toString(), title, description, amount);
+        }
+
+        static String key(String issuer, String title, String description, long amount) {
+            return issuer + '\u0000' + title + '\u0000' + description + '\u0000' + amount;
+        }
+    }
+
+    private final CordaRPCOps proxy;
+    private final IngestCheckpoint checkpoint;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final Map<CordaX500Name, Optional<Party>> issuers = new HashMap<>();
+    /** UIDs of our requests not recorded for any line, by contents as requested. Loaded on the first line in doubt. */
+    private Map<String, Deque<String>> unclaimed;
+    /** First failure to write the checkpoint, after which no more flows are started. */
+    private final AtomicReference<IOException> checkpointFailure = new AtomicReference<>();
+
+    private long read;
+    private long skipped;
+    private long recovered;
+    private long rejected;
+    private long submitted;
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong inDoubt = new AtomicLong();
+    private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+
+    BulkIngest(CordaRPCOps proxy, IngestCheckpoint checkpoint, int maxInFlight) {
+        this.proxy = proxy;
+        this.checkpoint = checkpoint;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 4 && args.length != 5) {
+            throw new IllegalArgumentException("Usage: BulkIngest <node address> <rpc username> <rpc password> <csv file> [max in flight]");
+        }
+        int maxInFlight = args.length == 5 ? Integer.parseInt(args[4]) : DEFAULT_IN_FLIGHT;
+        if (maxInFlight <= 0) throw new IllegalArgumentException("max in flight must be positive");
+        Path csv = Paths.get(args[3]);
+        Path checkpointPath = Paths.get(args[3] + ".checkpoint");
+
+        CordaRPCConnection connection = new CordaRPCClient(parse(args[0])).start(args[1], args[2]);
+        try (IngestCheckpoint checkpoint = new IngestCheckpoint(checkpointPath)) {
+            BulkIngest ingest = new BulkIngest(connection.getProxy(), checkpoint, maxInFlight);
+            long started = System.nanoTime();
+            ingest.run(csv);
+            ingest.summarize(System.nanoTime() - started);
+            if (ingest.failed.get() > 0 || ingest.rejected > 0 || ingest.inDoubt.get() > 0) {
+                logger.warn("Run again to retry the failed lines and reconcile the ones in doubt, see {} for the reasons", checkpointPath);
+            }
+        } finally {
+            connection.notifyServerAndClose();
+        }
+    }
+
+    /** Submits every line of CSV not done yet and waits for the outcome of all of them. */
+    void run(Path csv) throws IOException, InterruptedException {
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String text;
+            long line = 0;
+            boolean first = true;
+            // Lines seen so far by digest, to tell identical lines apart.
+            Map<String, Integer> occurrences = new HashMap<>();
+            while ((text = reader.readLine()) != null && checkpointFailure.get() == null) {
+                line++;
+                if (text.trim().isEmpty()) continue;
+                String digest = IngestCheckpoint.digest(text);
+                String key = IngestCheckpoint.key(digest, occurrences.merge(digest, 1, Integer::sum));
+                List<String> fields;
+                try {
+                    fields = parseCsv(text);
+                } catch (IllegalArgumentException e) {
+                    reject(line, key, e.getMessage());
+                    continue;
+                }
+                if (first) {
+                    first = false;
+                    if (fields.get(0).trim().equalsIgnoreCase("issuer")) continue;
+                }
+                read++;
+                submit(line, key, fields);
+            }
+        }
+        // Every permit back means every flow has finished.
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+        if (checkpointFailure.get() != null) throw checkpointFailure.get();
+    }
+
+    private void submit(long line, String key, List<String> fields) throws IOException, InterruptedException {
+        IngestCheckpoint.Status status = checkpoint.status(key);
+        if (status == IngestCheckpoint.Status.DONE) {
+            skipped++;
+            return;
+        }
+        Request request;
+        try {
+            request = Request.parse(fields);
+        } catch (IllegalArgumentException e) {
+            reject(line, key, e.getMessage());
+            return;
+        }
+        if (status == IngestCheckpoint.Status.SUBMITTED || status == IngestCheckpoint.Status.IN_DOUBT) {
+            String uid = claim(request);
+            if (uid != null) {
+                checkpoint.done(key, uid);
+                recovered++;
+                return;
+            }
+        }
+        Party issuer = issuers.computeIfAbsent(request.issuer, name -> Optional.ofNullable(proxy.wellKnownPartyFromX500Name(name))).orElse(null);
+        if (issuer == null) {
+            reject(line, key, "Unknown issuer " + request.issuer);
+            return;
+        }
+
+        inFlight.acquire();
+        checkpoint.submitted(key);
+        submitted++;
+        long started = System.nanoTime();
+        try {
+            proxy.startFlowDynamic(RequestFlow.class, issuer, request.title, request.description, request.amount)
+                    .getReturnValue().toCompletableFuture()
+                    .whenComplete((signedTx, error) -> finished(line, key, started, signedTx, error));
+        } catch (RuntimeException e) {
+            finished(line, key, started, null, e);
+        }
+    }
+
+    // Called once per submitted line, on an RPC client thread.
+    private void finished(long line, String key, long started, SignedTransaction signedTx, Throwable error) {
+        try {
+            if (error == null) {
+                checkpoint.done(key, signedTx.getTx().outputsOfType(TransferState.class).get(0).getUid());
+                succeeded.incrementAndGet();
+                latencies.add(System.nanoTime() - started);
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (isInDoubt(cause)) {
+                    checkpoint.inDoubt(key, String.valueOf(cause.getMessage()));
+                    inDoubt.incrementAndGet();
+                    logger.warn("Line {} in doubt: {}", line, cause.getMessage());
+                } else {
+                    checkpoint.failed(key, String.valueOf(cause.getMessage()));
+                    failed.incrementAndGet();
+                    logger.warn("Line {} failed: {}", line, cause.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            checkpointFailure.compareAndSet(null, e);
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Returns true if ERROR leaves the outcome of the flow unknown. Only a flow that ended with its own FlowException
+     * is known to have failed; a lost connection, a timeout or a counterparty that went away during finality may
+     * leave a finalized transfer behind.
+     */
+    static boolean isInDoubt(Throwable error) {
+        return !(error instanceof FlowException) || error instanceof UnexpectedFlowEndException;
+    }
+
+    private void reject(long line, String key, String reason) throws IOException {
+        checkpoint.failed(key, reason);
+        rejected++;
+        logger.warn("Line {} rejected: {}", line, reason);
+    }
+
+    /**
+     * Returns the UID of one of our requests matching REQUEST and not recorded yet, or null if none. Requests are
+     * matched as they were made, unapproved, so that the ones since approved, for any amount, or declined are found.
+     */
+    private String claim(Request request) throws InterruptedException {
+        if (unclaimed == null) {
+            unclaimed = new HashMap<>();
+            String us = proxy.nodeInfo().getLegalIdentities().get(0).getName().toString();
+            TransferPage page;
+            int pageNumber = 1;
+            do {
+                try {
+                    page = proxy.startFlowDynamic(ListTransfersFlow.class, ListTransfersFlow.Status.PENDING, true, pageNumber++, SUMMARY_PAGE_SIZE).getReturnValue().get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Cannot list transfers to resume from", e.getCause());
+                }
+                for (TransferSummary transfer : page.getTransfers()) {
+                    if (!transfer.getRequester().equals(us) || checkpoint.isRecorded(transfer.getUid())) continue;
+                    String key = Request.key(transfer.getIssuer(), transfer.getTitle(), transfer.getDescription(), transfer.getAmount());
+                    unclaimed.computeIfAbsent(key, k -> new ArrayDeque<>()).add(transfer.getUid());
+                }
+            } while (page.hasMore());
+        }
+        Deque<String> uids = unclaimed.get(request.key());
+        return uids == null ? null : uids.poll();
+    }
+
+    private void summarize(long nanos) {
+        double seconds = Math.max(1, nanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        logger.info("Read {} requests: {} already done, {} recovered, {} rejected, {} submitted, {} succeeded, {} failed, {} in doubt",
+                read, skipped, recovered, rejected, submitted, succeeded.get(), failed.get(), inDoubt.get());
+        logger.info("{} requests in {} s ({} requests/s) with up to {} in flight", succeeded.get(), String.format("%.2f", seconds),
+                String.format("%.1f", succeeded.get() / seconds), maxInFlight);
+        List<Long> sorted = new ArrayList<>(latencies);
+        if (sorted.isEmpty()) return;
+        Collections.sort(sorted);
+        logger.info("Flow latency p50 {} ms, p95 {} ms, max {} ms", millis(sorted, 0.5), millis(sorted, 0.95), millis(sorted, 1));
+    }
+
+    private static long millis(List<Long> sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.size()) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sorted.get(Math.max(0, index)));
+    }
+
+    /** Returns the fields of one CSV LINE. */
+    static List<String> parseCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) throw new IllegalArgumentException("Unterminated quote");
+        fields.add(field.toString());
+        return fields;
+    }
+}
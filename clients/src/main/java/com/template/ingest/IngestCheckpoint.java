@@ -0,0 +1,139 @@
+package com.template.ingest;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Append-only record of the progress of a BulkIngest run, one tab-separated entry per event:
+ *
+ *   S  key            the request of the line with KEY has been submitted
+ *   D  key  uid       it was finalized as transfer UID
+ *   F  key  reason    it failed, and can be submitted again
+ *   U  key  reason    its outcome is unknown, e.g. the RPC call failed or timed out, and the transfer may exist
+ *
+ * Lines are keyed by their contents and by how many identical lines come before them, rather than by their number,
+ * so that editing the CSV between runs does not carry the progress of one request over to another: an edited line
+ * starts afresh, and the others keep their entries wherever they have moved to.
+ *
+ * The last entry of a line wins. A line submitted but neither done nor failed is in doubt as well: the run stopped
+ * before the outcome was known. Lines in doubt must be reconciled with the ledger before being submitted again.
+ */
+class IngestCheckpoint implements Closeable {
+    enum Status { SUBMITTED, DONE, FAILED, IN_DOUBT }
+
+    private static final Pattern KEY = Pattern.compile("[0-9a-f]{64}/[1-9][0-9]*");
+
+    private final Map<String, Status> statuses = new HashMap<>();
+    private final Set<String> uids = new HashSet<>();
+    private final BufferedWriter writer;
+
+    IngestCheckpoint(Path path) throws IOException {
+        if (Files.exists(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String entry;
+                while ((entry = reader.readLine()) != null) {
+                    String[] fields = entry.split("\t", 3);
+                    // A run killed mid-write leaves a truncated last entry, which is as good as missing.
+                    if (fields.length < 2 || !KEY.matcher(fields[1]).matches()) continue;
+                    String key = fields[1];
+                    switch (fields[0]) {
+                        case "S": statuses.put(key, Status.SUBMITTED); break;
+                        case "D":
+                            if (fields.length < 3) continue;
+                            statuses.put(key, Status.DONE);
+                            uids.add(fields[2]);
+                            break;
+                        case "F": statuses.put(key, Status.FAILED); break;
+                        case "U": statuses.put(key, Status.IN_DOUBT); break;
+                        default: break;
+                    }
+                }
+            }
+        }
+        writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        // Start afresh after a truncated last entry rather than run on from it.
+        if (Files.size(path) > 0 && !endsWithNewline(path)) append("");
+    }
+
+    private static boolean endsWithNewline(Path path) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.position(channel.size() - 1).read(last);
+            return last.get(0) == '\n';
+        }
+    }
+
+    /** Returns the SHA-256 of the TEXT of a line, in hex. */
+    static String digest(String text) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8))) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Returns the key of a line with DIGEST, preceded by OCCURRENCE - 1 identical lines. */
+    static String key(String digest, int occurrence) {
+        return digest + "/" + occurrence;
+    }
+
+    /** Returns the status of the line with KEY from earlier runs, or null if it was never submitted. */
+    synchronized Status status(String key) {
+        return statuses.get(key);
+    }
+
+    /** Returns true if transfer UID is recorded as done for some line. */
+    synchronized boolean isRecorded(String uid) {
+        return uids.contains(uid);
+    }
+
+    synchronized void submitted(String key) throws IOException {
+        append("S\t" + key);
+        statuses.put(key, Status.SUBMITTED);
+    }
+
+    synchronized void done(String key, String uid) throws IOException {
+        append("D\t" + key + "\t" + uid);
+        statuses.put(key, Status.DONE);
+        uids.add(uid);
+    }
+
+    synchronized void failed(String key, String reason) throws IOException {
+        append("F\t" + key + "\t" + reason.replaceAll("[\\t\\r\\n]+", " "));
+        statuses.put(key, Status.FAILED);
+    }
+
+    synchronized void inDoubt(String key, String reason) throws IOException {
+        append("U\t" + key + "\t" + reason.replaceAll("[\\t\\r\\n]+", " "));
+        statuses.put(key, Status.IN_DOUBT);
+    }
+
+    // Flushed entry by entry, so that an interrupted run loses at most the entry being written.
+    private void append(String entry) throws IOException {
+        writer.write(entry);
+        writer.newLine();
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
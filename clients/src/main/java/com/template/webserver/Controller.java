@@ -1,11 +1,34 @@
 package com.template.webserver;
 
-import net.corda.core.messaging.CordaRPCOps;
+import com.template.flows.GetTransferFlow;
+import com.template.flows.TransferSummary;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.CordaX500Name;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Define your API endpoints here.
@@ -13,15 +36,149 @@ import org.springframework.web.bind.annotation.RestController;
 @RestController
 @RequestMapping("/") // The paths for HTTP requests are relative to this base path.
 public class Controller {
-    private final CordaRPCOps proxy;
+    private final NodeRPCConnection rpc;
+    private final TransferExporter exporter;
+    private final TransferReadModel readModel;
+    private final TransferSearchIndex searchIndex;
+    private final TransferChanges changes;
     private final static Logger logger = LoggerFactory.getLogger(Controller.class);
 
-    public Controller(NodeRPCConnection rpc) {
-        this.proxy = rpc.proxy;
+    public Controller(NodeRPCConnection rpc, TransferExporter exporter, TransferReadModel readModel, TransferSearchIndex searchIndex,
+                      TransferChanges changes) {
+        this.rpc = rpc;
+        this.exporter = exporter;
+        this.readModel = readModel;
+        this.searchIndex = searchIndex;
+        this.changes = changes;
     }
 
     @GetMapping(value = "/templateendpoint", produces = "text/plain")
     private String templateendpoint() {
         return "Define an endpoint here.";
     }
-}
\ No newline at end of file
+
+    /**
+     * Streams transfers as CSV or NDJSON, optionally gzipped. The response is chunked and written one vault page at
+     * a time, so extracts of any size run in constant memory. FROM and TO are ISO-8601 instants bounding the request
+     * date, PARTY is the X.500 name of the issuer or requester.
+     */
+    @GetMapping(value = "/transfers/export")
+    private void exportTransfers(@RequestParam(value = "format", defaultValue = "csv") String format,
+                                 @RequestParam(value = "from", required = false) String from,
+                                 @RequestParam(value = "to", required = false) String to,
+                                 @RequestParam(value = "party", required = false) String party,
+                                 @RequestParam(value = "includeConsumed", defaultValue = "false") boolean includeConsumed,
+                                 @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+                                 HttpServletResponse response) throws IOException {
+        TransferExporter.Format exportFormat = TransferExporter.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        Instant fromInstant = from == null ? null : Instant.parse(from);
+        Instant toInstant = to == null ? null : Instant.parse(to);
+        CordaX500Name partyName = party == null ? null : CordaX500Name.parse(party);
+
+        String fileName = "transfers." + exportFormat.getExtension() + (gzip ? ".gz" : "");
+        response.setContentType(gzip ? "application/gzip" : exportFormat.getContentType() + ";charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+
+        OutputStream out = response.getOutputStream();
+        if (gzip) {
+            // Sync flush so that every page reaches the client as it is written.
+            out = new GZIPOutputStream(out, true);
+        }
+        long written = exporter.export(exportFormat, fromInstant, toInstant, partyName, includeConsumed, out);
+        if (gzip) {
+            ((GZIPOutputStream) out).finish();
+        }
+        out.flush();
+        logger.info("Exported {} transfers as {}", written, fileName);
+    }
+
+    /**
+     * Lists the transfers awaiting approval, served from the read model. The response is marked stale while the read
+     * model is behind the vault.
+     */
+    @GetMapping(value = "/transfers/pending", produces = "application/json")
+    private List<TransferRecord> pendingTransfers(WebRequest request, HttpServletResponse response) {
+        if (notModified(request)) return null;
+        markIfStale(response);
+        return readModel.pending();
+    }
+
+    /**
+     * Returns the approved amount and number of approvals per issuer, served from the read model. CAUGHTUP is false,
+     * and the response marked stale, while the server is replaying vault events since its last snapshot or after
+     * losing its connection to the node.
+     */
+    @GetMapping(value = "/transfers/aggregates", produces = "application/json")
+    private Map<String, Object> transferAggregates(WebRequest request, HttpServletResponse response) {
+        if (notModified(request)) return null;
+        markIfStale(response);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("caughtUp", readModel.isCaughtUp());
+        result.put("approvedTotals", readModel.approvedTotals());
+        result.put("approvedCounts", readModel.approvedCounts());
+        return result;
+    }
+
+    /**
+     * Ranks the unconsumed transfers by the words of Q found in their title and description. STATUS is any, pending
+     * or approved, PARTY the X.500 name of the issuer or requester.
+     */
+    @GetMapping(value = "/transfers/search", produces = "application/json")
+    private List<TransferSearchIndex.Hit> searchTransfers(@RequestParam("q") String q,
+                                                          @RequestParam(value = "status", defaultValue = "any") String status,
+                                                          @RequestParam(value = "party", required = false) String party,
+                                                          @RequestParam(value = "limit", defaultValue = "20") int limit,
+                                                          WebRequest request) {
+        if (notModified(request)) return null;
+        TransferSearchIndex.Status statusFilter = TransferSearchIndex.Status.valueOf(status.toUpperCase(Locale.ROOT));
+        String partyName = party == null ? null : CordaX500Name.parse(party).toString();
+        return searchIndex.search(q, statusFilter, partyName, Math.min(limit, 1000));
+    }
+
+    /**
+     * Returns the transfers produced and consumed since CURSOR, with the cursor to ask for the next changes. Without a
+     * cursor every change since the start of the ledger is returned, LIMIT at a time.
+     */
+    @GetMapping(value = "/transfers/changes", produces = "application/json")
+    private TransferChanges.Delta transferChanges(@RequestParam(value = "cursor", required = false) String cursor,
+                                                  @RequestParam(value = "limit", defaultValue = "500") int limit) {
+        return changes.since(cursor, limit);
+    }
+
+    /**
+     * Returns the transfer whose UID starts with UID, summarised on the node by GetTransferFlow so that only the
+     * fields shown cross the RPC connection.
+     */
+    @GetMapping(value = "/transfers/{uid}", produces = "application/json")
+    private TransferSummary transfer(@PathVariable("uid") String uid) throws InterruptedException {
+        try {
+            return rpc.proxy().startFlowDynamic(GetTransferFlow.class, uid).getReturnValue().get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FlowException) throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getCause().getMessage());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Answers 304 Not Modified if the client already holds the response for the current read model version. Every
+    // response built from the read model carries that version as its ETag.
+    private boolean notModified(WebRequest request) {
+        return request.checkNotModified("\"" + readModel.getVersion() + (readModel.isCaughtUp() ? "" : "-catching-up") + "\"");
+    }
+
+    // Flags responses from a read model that is behind the vault with the standard "Response is Stale" warning.
+    private void markIfStale(HttpServletResponse response) {
+        if (!readModel.isCaughtUp()) response.setHeader(HttpHeaders.WARNING, "110 - \"Response is Stale\"");
+    }
+
+    @ExceptionHandler(NodeRPCConnection.NotConnectedException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    private String nodeUnavailable(RuntimeException e) {
+        return e.getMessage();
+    }
+
+    @ExceptionHandler({IllegalArgumentException.class, DateTimeParseException.class})
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    private String badRequest(RuntimeException e) {
+        return e.getMessage();
+    }
+}
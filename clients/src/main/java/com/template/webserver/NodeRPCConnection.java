@@ -4,19 +4,35 @@ import net.corda.client.rpc.CordaRPCClient;
 import net.corda.client.rpc.CordaRPCConnection;
 import net.corda.core.messaging.CordaRPCOps;
 import net.corda.core.utilities.NetworkHostAndPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Wraps an RPC connection to a Corda node.
  *
- * The RPC connection is configured using command line arguments.
+ * The RPC connection is configured using command line arguments. It is made in the background and made again
+ * whenever it is lost, so that the server starts, and serves what it can, while the node is unreachable.
  */
 @Component
 public class NodeRPCConnection implements AutoCloseable {
+    private final static Logger logger = LoggerFactory.getLogger(NodeRPCConnection.class);
+
+    /** Wait before the first reconnection attempt, doubled on every following one up to MAX_RETRY_DELAY. */
+    static final Duration INITIAL_RETRY_DELAY = Duration.ofSeconds(1);
+    static final Duration MAX_RETRY_DELAY = Duration.ofSeconds(30);
+
     // The host of the node we are connecting to.
     @Value("${config.rpc.host}")
     private String host;
@@ -30,19 +46,102 @@ public class NodeRPCConnection implements AutoCloseable {
     @Value("${config.rpc.port}")
     private int rpcPort;
 
-    private CordaRPCConnection rpcConnection;
-    CordaRPCOps proxy;
+    private ScheduledExecutorService executor;
+    private volatile CordaRPCConnection rpcConnection;
+    private volatile CordaRPCOps proxy;
+    private Duration retryDelay = INITIAL_RETRY_DELAY;
+
+    /** Called with the new proxy on every successful connection. */
+    private final List<Consumer<CordaRPCOps>> listeners = new CopyOnWriteArrayList<>();
+
+    /** Thrown when the node is needed while there is no connection to it. */
+    public static class NotConnectedException extends IllegalStateException {
+        NotConnectedException(String message) {
+            super(message);
+        }
+    }
 
     @PostConstruct
     public void initialiseNodeRPCConnection() {
-        NetworkHostAndPort rpcAddress = new NetworkHostAndPort(host, rpcPort);
-        CordaRPCClient rpcClient = new CordaRPCClient(rpcAddress);
-        rpcConnection = rpcClient.start(username, password);
-        proxy = rpcConnection.getProxy();
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rpc-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::connect);
+    }
+
+    /** Returns the proxy to the node, or throws NotConnectedException while the node is unreachable. */
+    public CordaRPCOps proxy() {
+        CordaRPCOps current = proxy;
+        if (current == null) throw new NotConnectedException("Node " + host + ":" + rpcPort + " is not reachable, please retry later.");
+        return current;
+    }
+
+    /** Returns true while there is a connection to the node. */
+    public boolean isConnected() {
+        return proxy != null;
+    }
+
+    /** Calls LISTENER with the proxy now if connected, and again after every reconnection. */
+    public void onConnected(Consumer<CordaRPCOps> listener) {
+        listeners.add(listener);
+        CordaRPCOps current = proxy;
+        if (current != null) listener.accept(current);
+    }
+
+    /**
+     * Reports that a call through FAILED, a proxy returned earlier, failed for want of a connection. The connection
+     * is dropped and made again in the background, unless that has already happened.
+     */
+    public void connectionLost(CordaRPCOps failed) {
+        executor.execute(() -> {
+            if (proxy != failed || failed == null) return;
+            logger.warn("Lost the RPC connection to {}:{}, reconnecting", host, rpcPort);
+            proxy = null;
+            closeQuietly(rpcConnection);
+            rpcConnection = null;
+            connect();
+        });
+    }
+
+    // Runs on the executor only.
+    private void connect() {
+        try {
+            CordaRPCClient rpcClient = new CordaRPCClient(new NetworkHostAndPort(host, rpcPort));
+            rpcConnection = rpcClient.start(username, password);
+            proxy = rpcConnection.getProxy();
+        } catch (RuntimeException e) {
+            logger.warn("Could not connect to {}:{} ({}), retrying in {} s", host, rpcPort, e.getMessage(), retryDelay.getSeconds());
+            executor.schedule(this::connect, retryDelay.toMillis(), TimeUnit.MILLISECONDS);
+            retryDelay = retryDelay.multipliedBy(2).compareTo(MAX_RETRY_DELAY) > 0 ? MAX_RETRY_DELAY : retryDelay.multipliedBy(2);
+            return;
+        }
+        retryDelay = INITIAL_RETRY_DELAY;
+        logger.info("Connected to {}:{}", host, rpcPort);
+        CordaRPCOps connected = proxy;
+        for (Consumer<CordaRPCOps> listener : listeners) {
+            try {
+                listener.accept(connected);
+            } catch (RuntimeException e) {
+                logger.warn("RPC connection listener failed", e);
+            }
+        }
+    }
+
+    private static void closeQuietly(CordaRPCConnection connection) {
+        if (connection == null) return;
+        try {
+            connection.forceClose();
+        } catch (RuntimeException e) {
+            logger.debug("Closing a lost RPC connection failed", e);
+        }
     }
 
     @PreDestroy
     public void close() {
-        rpcConnection.notifyServerAndClose();
+        if (executor != null) executor.shutdownNow();
+        CordaRPCConnection connection = rpcConnection;
+        if (connection != null) connection.notifyServerAndClose();
     }
-}
\ No newline at end of file
+}
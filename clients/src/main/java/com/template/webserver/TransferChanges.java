@@ -0,0 +1,301 @@
+package com.template.webserver;
+
+import com.template.states.TransferState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.BinaryComparisonOperator;
+import net.corda.core.node.services.vault.ColumnPredicate;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Answers "what changed since my last view" for clients that keep their own copy of the transfers, so that refresh
+ * traffic scales with the rate of change rather than with the size of the ledger.
+ *
+ * A cursor records the vault time a client has seen up to, and the read model version at that point. While the read
+ * model has not moved since, the answer is empty without asking the vault at all.
+ *
+ * A state is stamped with its vault time before the transaction recording it commits, so it may become visible only
+ * after a client has read past that time. Every answer therefore also replays the changes of the last
+ * TransferReadModel.CATCH_UP_OVERLAP before the cursor, which clients apply again by reference at no harm.
+ */
+@Component
+public class TransferChanges {
+    /** Largest number of produced, and of consumed, states returned at once. */
+    static final int MAX_LIMIT = 5000;
+    /** Smallest LIMIT accepted: a client paging a handful of states at a time would mostly pay for the round trips. */
+    static final int MIN_LIMIT = 10;
+
+    /** Changes since a cursor. Clients apply the produced states, then remove the consumed ones, by reference. */
+    public static class Delta {
+        private final String cursor;
+        private final List<TransferRecord> produced;
+        private final List<String> consumed;
+        private final boolean more;
+
+        Delta(String cursor, List<TransferRecord> produced, List<String> consumed, boolean more) {
+            this.cursor = cursor;
+            this.produced = produced;
+            this.consumed = consumed;
+            this.more = more;
+        }
+
+        /** Cursor to ask for the next changes with. */
+        public String getCursor() {
+            return cursor;
+        }
+
+        /** Transfers recorded since the cursor, including ones consumed since. */
+        public List<TransferRecord> getProduced() {
+            return produced;
+        }
+
+        /** References of the transfers consumed since the cursor. */
+        public List<String> getConsumed() {
+            return consumed;
+        }
+
+        /** True if the changes did not fit and the client should ask again straight away. */
+        public boolean getMore() {
+            return more;
+        }
+    }
+
+    private final NodeRPCConnection rpc;
+    private final TransferReadModel readModel;
+    /** Identifies this run of the server, as read model versions start again on every run. */
+    private final String run = UUID.randomUUID().toString();
+
+    public TransferChanges(NodeRPCConnection rpc, TransferReadModel readModel) {
+        this.rpc = rpc;
+        this.readModel = readModel;
+    }
+
+    /**
+     * Returns up to LIMIT produced and LIMIT consumed transfers since CURSOR, or since the start of the ledger if
+     * CURSOR is null. Changes shortly before the cursor are returned again, besides the LIMIT, which is harmless as
+     * clients apply them by reference.
+     */
+    public Delta since(String cursor, int limit) {
+        if (limit < MIN_LIMIT || limit > MAX_LIMIT) throw new IllegalArgumentException("limit must be between " + MIN_LIMIT + " and " + MAX_LIMIT);
+        Cursor from = cursor == null ? null : Cursor.parse(cursor);
+        // Read the version before querying, so that any change the queries miss moves it on.
+        long version = readModel.getVersion();
+        if (from != null && readModel.isCaughtUp() && run.equals(from.run) && from.version == version) {
+            return new Delta(cursor, Collections.emptyList(), Collections.emptyList(), false);
+        }
+        Instant since = from == null ? Instant.EPOCH : from.time;
+
+        CordaRPCOps proxy = rpc.proxy();
+        List<Change> produced = read(proxy,
+                new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.ALL).withTimeCondition(after(QueryCriteria.TimeInstantType.RECORDED, since)),
+                sortBy(Sort.VaultStateAttribute.RECORDED_TIME), Vault.StateMetadata::getRecordedTime,
+                since, from == null ? null : from.lastProduced, limit);
+        List<Change> consumed = read(proxy,
+                new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.CONSUMED).withTimeCondition(after(QueryCriteria.TimeInstantType.CONSUMED, since)),
+                sortBy(Sort.VaultStateAttribute.CONSUMED_TIME), Vault.StateMetadata::getConsumedTime,
+                since, from == null ? null : from.lastConsumed, limit);
+
+        // If either side was cut short, only return the changes up to where it was cut, so that none are skipped.
+        Instant cutoff = null;
+        if (produced.size() == limit) cutoff = produced.get(limit - 1).time;
+        if (consumed.size() == limit) {
+            Instant consumedCutoff = consumed.get(limit - 1).time;
+            if (cutoff == null || consumedCutoff.isBefore(cutoff)) cutoff = consumedCutoff;
+        }
+        produced = upTo(produced, cutoff);
+        consumed = upTo(consumed, cutoff);
+
+        Instant latest = since;
+        if (!produced.isEmpty() && produced.get(produced.size() - 1).time.isAfter(latest)) latest = produced.get(produced.size() - 1).time;
+        if (!consumed.isEmpty() && consumed.get(consumed.size() - 1).time.isAfter(latest)) latest = consumed.get(consumed.size() - 1).time;
+
+        List<TransferRecord> producedRecords = new ArrayList<>();
+        List<String> consumedRefs = new ArrayList<>();
+        if (from != null) {
+            // Replayed first, so that a replayed state consumed since is removed again by the consumed list.
+            Instant replayFrom = since.minus(TransferReadModel.CATCH_UP_OVERLAP);
+            for (Change change : replay(proxy, Vault.StateStatus.ALL, QueryCriteria.TimeInstantType.RECORDED,
+                    Sort.VaultStateAttribute.RECORDED_TIME, Vault.StateMetadata::getRecordedTime, replayFrom, since, produced)) {
+                producedRecords.add(TransferRecord.of(change.state));
+            }
+            for (Change change : replay(proxy, Vault.StateStatus.CONSUMED, QueryCriteria.TimeInstantType.CONSUMED,
+                    Sort.VaultStateAttribute.CONSUMED_TIME, Vault.StateMetadata::getConsumedTime, replayFrom, since, consumed)) {
+                consumedRefs.add(change.state.getRef().toString());
+            }
+        }
+        for (Change change : produced) producedRecords.add(TransferRecord.of(change.state));
+        for (Change change : consumed) consumedRefs.add(change.state.getRef().toString());
+
+        boolean more = cutoff != null;
+        Instant nextTime = more ? cutoff : latest;
+        // A partial answer must not let the next request take the shortcut above.
+        Cursor next = new Cursor(nextTime, run, more ? -1 : version,
+                lastAt(produced, nextTime, since, from == null ? null : from.lastProduced),
+                lastAt(consumed, nextTime, since, from == null ? null : from.lastConsumed));
+        return new Delta(next.encode(), producedRecords, consumedRefs, more);
+    }
+
+    /** A state with the time it was recorded or consumed. */
+    private static class Change {
+        private final Instant time;
+        private final StateAndRef<TransferState> state;
+
+        Change(Instant time, StateAndRef<TransferState> state) {
+            this.time = time;
+            this.state = state;
+        }
+    }
+
+    /**
+     * Returns up to LIMIT states matching CRITERIA, in SORT order with ties broken by state ref. States at time SINCE
+     * up to and including the one referenced by AFTER were returned by an earlier call and are skipped, so that a
+     * client makes progress even when more than LIMIT states share a time.
+     */
+    private static List<Change> read(CordaRPCOps proxy, QueryCriteria criteria, Sort sort, Function<Vault.StateMetadata, Instant> timeOf,
+                                     Instant since, String after, int limit) {
+        List<Change> changes = new ArrayList<>();
+        // States at time SINCE met before AFTER, kept in case AFTER is not found after all.
+        List<Change> skipped = new ArrayList<>();
+        boolean skipping = after != null;
+        int pageNumber = DEFAULT_PAGE_NUM;
+        while (true) {
+            Vault.Page<TransferState> page = proxy.vaultQueryBy(criteria, new PageSpecification(pageNumber, limit), sort, TransferState.class);
+            for (int i = 0; i < page.getStates().size(); i++) {
+                Change change = new Change(timeOf.apply(page.getStatesMetadata().get(i)), page.getStates().get(i));
+                if (skipping) {
+                    if (change.time.equals(since)) {
+                        if (change.state.getRef().toString().equals(after)) {
+                            skipping = false;
+                            skipped.clear();
+                        } else {
+                            skipped.add(change);
+                        }
+                        continue;
+                    }
+                    skipping = false;
+                    changes.addAll(skipped);
+                }
+                changes.add(change);
+                if (changes.size() >= limit) return changes.subList(0, limit);
+            }
+            if ((long) pageNumber * limit >= page.getTotalStatesAvailable()) break;
+            pageNumber++;
+        }
+        if (skipping) changes.addAll(skipped);
+        return changes.size() > limit ? changes.subList(0, limit) : changes;
+    }
+
+    /**
+     * Returns the states with STATUS whose TYPE time is from REPLAY_FROM to SINCE, other than those in CHANGES. At most
+     * MAX_LIMIT are replayed: past that, the window is busier than any transaction is slow to commit, and the oldest
+     * of it are the least likely to have been missed.
+     */
+    private static List<Change> replay(CordaRPCOps proxy, Vault.StateStatus status, QueryCriteria.TimeInstantType type,
+                                       Sort.VaultStateAttribute attribute, Function<Vault.StateMetadata, Instant> timeOf,
+                                       Instant replayFrom, Instant since, List<Change> changes) {
+        Set<String> returned = new HashSet<>();
+        for (Change change : changes) returned.add(change.state.getRef().toString());
+        QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(status).withTimeCondition(
+                new QueryCriteria.TimeCondition(type, new ColumnPredicate.Between<>(replayFrom, since)));
+        List<Change> replayed = new ArrayList<>();
+        for (Change change : read(proxy, criteria, sortBy(attribute, Sort.Direction.DESC), timeOf, since, null, MAX_LIMIT)) {
+            if (!returned.contains(change.state.getRef().toString())) replayed.add(change);
+        }
+        Collections.reverse(replayed);
+        return replayed;
+    }
+
+    private static List<Change> upTo(List<Change> changes, Instant cutoff) {
+        if (cutoff == null) return changes;
+        int end = 0;
+        while (end < changes.size() && !changes.get(end).time.isAfter(cutoff)) end++;
+        return changes.subList(0, end);
+    }
+
+    /**
+     * Returns the reference of the last of CHANGES at TIME, so that the next call resumes after it. Without one,
+     * PREVIOUS still holds if the time has not moved on from SINCE.
+     */
+    private static String lastAt(List<Change> changes, Instant time, Instant since, String previous) {
+        if (!changes.isEmpty()) {
+            Change last = changes.get(changes.size() - 1);
+            if (last.time.equals(time)) return last.state.getRef().toString();
+        }
+        return time.equals(since) ? previous : null;
+    }
+
+    private static QueryCriteria.TimeCondition after(QueryCriteria.TimeInstantType type, Instant since) {
+        return new QueryCriteria.TimeCondition(type, new ColumnPredicate.BinaryComparison<>(BinaryComparisonOperator.GREATER_THAN_OR_EQUAL, since));
+    }
+
+    /** ATTRIBUTE order, with ties broken by state ref so that the position of every state is well defined. */
+    private static Sort sortBy(Sort.VaultStateAttribute attribute) {
+        return sortBy(attribute, Sort.Direction.ASC);
+    }
+
+    private static Sort sortBy(Sort.VaultStateAttribute attribute, Sort.Direction direction) {
+        return new Sort(Arrays.asList(
+                new Sort.SortColumn(new SortAttribute.Standard(attribute), direction),
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID), Sort.Direction.ASC),
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_INDEX), Sort.Direction.ASC)));
+    }
+
+    /**
+     * Position of a client in the stream of changes, handed out as an opaque string. Besides the time, it holds the
+     * last produced and consumed state returned at that time, if any.
+     */
+    private static class Cursor {
+        private final Instant time;
+        private final String run;
+        private final long version;
+        private final String lastProduced;
+        private final String lastConsumed;
+
+        Cursor(Instant time, String run, long version, String lastProduced, String lastConsumed) {
+            this.time = time;
+            this.run = run;
+            this.version = version;
+            this.lastProduced = lastProduced;
+            this.lastConsumed = lastConsumed;
+        }
+
+        String encode() {
+            String plain = time.getEpochSecond() + ":" + time.getNano() + ":" + run + ":" + version + ":"
+                    + (lastProduced == null ? "" : lastProduced) + ":" + (lastConsumed == null ? "" : lastConsumed);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor parse(String cursor) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", -1);
+                // Cursors handed out before states at the same time were told apart have four parts.
+                if (parts.length != 4 && parts.length != 6) throw new IllegalArgumentException("Invalid cursor");
+                return new Cursor(Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1])), parts[2], Long.parseLong(parts[3]),
+                        parts.length == 6 && !parts[4].isEmpty() ? parts[4] : null,
+                        parts.length == 6 && !parts[5].isEmpty() ? parts[5] : null);
+            } catch (IllegalArgumentException e) {
+                // Also covers malformed numbers and Base64.
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.template.webserver;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.template.schemas.TransferSchemaV1;
+import com.template.states.TransferState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.BinaryComparisonOperator;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.ColumnPredicate;
+import net.corda.core.node.services.vault.CriteriaExpression;
+import net.corda.core.node.services.vault.FieldInfo;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.QueryCriteriaUtils;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Streams TransferState records out of the vault one page at a time, so that memory use does not depend on the size
+ * of the export.
+ */
+@Component
+public class TransferExporter {
+    /** Number of states fetched over RPC at a time. */
+    static final int PAGE_SIZE = 500;
+
+    /** Recorded time order, with ties broken by state ref so that every page is well defined. */
+    private static final Sort SNAPSHOT_ORDER = new Sort(Arrays.asList(
+            new Sort.SortColumn(new SortAttribute.Standard(Sort.VaultStateAttribute.RECORDED_TIME), Sort.Direction.ASC),
+            new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID), Sort.Direction.ASC),
+            new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_INDEX), Sort.Direction.ASC)));
+
+    /** Columns of a CSV export, also used as the field names of an NDJSON export. */
+    static final String[] COLUMNS = {"uid", "issuer", "requester", "amount", "requestDate", "validUntil", "approved",
+            "title", "description", "status", "recordedTime"};
+
+    /** Supported export formats. */
+    public enum Format {
+        CSV("text/csv", "csv"), NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private final NodeRPCConnection rpc;
+
+    public TransferExporter(NodeRPCConnection rpc) {
+        this.rpc = rpc;
+    }
+
+    /**
+     * Writes every transfer requested in [FROM, TO) and involving PARTY to OUT in FORMAT. Null bounds and a null
+     * PARTY are not applied. Consumed states are only included if INCLUDECONSUMED. Returns the number of records
+     * written.
+     *
+     * The export is a snapshot of the vault at the time it starts: states recorded afterwards are left out, and
+     * states consumed afterwards are still written, with the status they had then. The set of matching states is
+     * therefore fixed, and paging through it in recorded time and state ref order neither skips nor repeats records.
+     */
+    public long export(Format format, Instant from, Instant to, CordaX500Name party, boolean includeConsumed, OutputStream out) throws IOException {
+        CordaRPCOps proxy = rpc.proxy();
+        if (party != null && proxy.wellKnownPartyFromX500Name(party) == null) throw new IllegalArgumentException("Unknown party " + party);
+        Instant snapshot = proxy.currentNodeTime();
+        QueryCriteria criteria = criteria(snapshot, from, to, party, includeConsumed);
+
+        RecordWriter writer = format == Format.CSV ? new CsvWriter(out) : new NdjsonWriter(out);
+        writer.begin();
+        long written = 0;
+        for (int page = DEFAULT_PAGE_NUM; ; page++) {
+            Vault.Page<TransferState> results = proxy.vaultQueryBy(criteria, new PageSpecification(page, PAGE_SIZE), SNAPSHOT_ORDER, TransferState.class);
+            List<StateAndRef<TransferState>> states = results.getStates();
+            List<Vault.StateMetadata> metadata = results.getStatesMetadata();
+            for (int i = 0; i < states.size(); i++) {
+                writer.write(states.get(i).getState().getData(), statusAt(metadata.get(i), snapshot), metadata.get(i).getRecordedTime());
+                written++;
+            }
+            // Hand each page to the client before fetching the next one.
+            writer.flush();
+            if (states.isEmpty() || (long) page * PAGE_SIZE >= results.getTotalStatesAvailable()) break;
+        }
+        writer.end();
+        return written;
+    }
+
+    // Every filter runs in the vault: the snapshot on the vault metadata, the rest on the TransferSchemaV1 columns.
+    private static QueryCriteria criteria(Instant snapshot, Instant from, Instant to, CordaX500Name party, boolean includeConsumed) {
+        QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.ALL)
+                .withTimeCondition(new QueryCriteria.TimeCondition(QueryCriteria.TimeInstantType.RECORDED,
+                        new ColumnPredicate.BinaryComparison<>(BinaryComparisonOperator.LESS_THAN_OR_EQUAL, snapshot)));
+        if (!includeConsumed) {
+            // Unconsumed at the snapshot: still unconsumed, or consumed since.
+            QueryCriteria consumedSince = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.CONSUMED)
+                    .withTimeCondition(new QueryCriteria.TimeCondition(QueryCriteria.TimeInstantType.CONSUMED,
+                            new ColumnPredicate.BinaryComparison<>(BinaryComparisonOperator.GREATER_THAN, snapshot)));
+            criteria = criteria.and(new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED).or(consumedSince));
+        }
+        if (from != null) criteria = criteria.and(transferCriteria(Builder.greaterThanOrEqual(field("requestDate"), from)));
+        if (to != null) criteria = criteria.and(transferCriteria(Builder.lessThan(field("requestDate"), to)));
+        if (party != null) {
+            criteria = criteria.and(transferCriteria(Builder.equal(field("issuerName"), party.toString()))
+                    .or(transferCriteria(Builder.equal(field("requesterName"), party.toString()))));
+        }
+        return criteria;
+    }
+
+    // Custom criteria default to unconsumed states, which would undo the snapshot.
+    private static QueryCriteria transferCriteria(CriteriaExpression expression) {
+        return new QueryCriteria.VaultCustomQueryCriteria(expression, Vault.StateStatus.ALL);
+    }
+
+    private static FieldInfo field(String name) {
+        return QueryCriteriaUtils.getField(name, TransferSchemaV1.PersistentTransfer.class);
+    }
+
+    /** Returns the status of the state of METADATA at SNAPSHOT. */
+    private static Vault.StateStatus statusAt(Vault.StateMetadata metadata, Instant snapshot) {
+        Instant consumed = metadata.getConsumedTime();
+        return consumed != null && !consumed.isAfter(snapshot) ? Vault.StateStatus.CONSUMED : Vault.StateStatus.UNCONSUMED;
+    }
+
+    /** Returns the X.500 name of PARTY, or its key if it is anonymous. */
+    static String nameOf(AbstractParty party) {
+        CordaX500Name name = party.nameOrNull();
+        return name == null ? party.getOwningKey().toString() : name.toString();
+    }
+
+    /** Writes records of one export format. */
+    private interface RecordWriter {
+        void begin() throws IOException;
+        void write(TransferState transfer, Vault.StateStatus status, Instant recordedTime) throws IOException;
+        void flush() throws IOException;
+        void end() throws IOException;
+    }
+
+    private static class CsvWriter implements RecordWriter {
+        private final Writer writer;
+
+        CsvWriter(OutputStream out) {
+            this.writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void begin() throws IOException {
+            writer.write(String.join(",", COLUMNS));
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void write(TransferState transfer, Vault.StateStatus status, Instant recordedTime) throws IOException {
+            String[] values = {transfer.getUid(), nameOf(transfer.getIssuer()), nameOf(transfer.getRequester()),
+                    Long.toString(transfer.getAmount()), transfer.getRequestDate().toString(), transfer.getValidUntil().toString(),
+                    Boolean.toString(transfer.getApprove()), transfer.getTitle(), transfer.getDescription(),
+                    status.name(), recordedTime.toString()};
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) writer.write(',');
+                writer.write(escape(values[i]));
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void end() throws IOException {
+            writer.flush();
+        }
+
+        /** Quotes VALUE if it holds a separator, a quote or a line break, as in RFC 4180. */
+        private static String escape(String value) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+
+    private static class NdjsonWriter implements RecordWriter {
+        private final JsonGenerator generator;
+
+        NdjsonWriter(OutputStream out) throws IOException {
+            // Records are separated by our own line breaks rather than the default root value separator.
+            this.generator = new JsonFactory().setRootValueSeparator(null).createGenerator(out);
+            // The servlet container owns the response stream.
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public void write(TransferState transfer, Vault.StateStatus status, Instant recordedTime) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField(COLUMNS[0], transfer.getUid());
+            generator.writeStringField(COLUMNS[1], nameOf(transfer.getIssuer()));
+            generator.writeStringField(COLUMNS[2], nameOf(transfer.getRequester()));
+            generator.writeNumberField(COLUMNS[3], transfer.getAmount());
+            generator.writeStringField(COLUMNS[4], transfer.getRequestDate().toString());
+            generator.writeStringField(COLUMNS[5], transfer.getValidUntil().toString());
+            generator.writeBooleanField(COLUMNS[6], transfer.getApprove());
+            generator.writeStringField(COLUMNS[7], transfer.getTitle());
+            generator.writeStringField(COLUMNS[8], transfer.getDescription());
+            generator.writeStringField(COLUMNS[9], status.name());
+            generator.writeStringField(COLUMNS[10], recordedTime.toString());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+
+        @Override
+        public void end() throws IOException {
+            generator.close();
+        }
+    }
+}
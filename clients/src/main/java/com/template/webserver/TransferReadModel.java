@@ -0,0 +1,445 @@
+package com.template.webserver;
+
+import com.template.states.TransferState;
+import net.corda.client.rpc.RPCException;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.DataFeed;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.BinaryComparisonOperator;
+import net.corda.core.node.services.vault.ColumnPredicate;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import rx.Subscription;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Read side of the web server: an in-memory index of the unconsumed transfers and the aggregates derived from it,
+ * kept up to date from the vault update feed.
+ *
+ * The model is snapshotted to local disk together with the vault position it reflects. On startup the snapshot is
+ * loaded in the background and only the vault events since that position are replayed, so that the server serves
+ * requests right away and a restart does not read the whole vault again.
+ */
+@Component
+public class TransferReadModel {
+    private final static Logger logger = LoggerFactory.getLogger(TransferReadModel.class);
+
+    /** Format of the snapshot file, bumped whenever Snapshot or TransferRecord change incompatibly. */
+    static final int SNAPSHOT_FORMAT = 1;
+    /** Events this long before the snapshot position are replayed too, to cover clock skew and feed lag. */
+    static final Duration CATCH_UP_OVERLAP = Duration.ofMinutes(1);
+    /** Number of states fetched over RPC at a time while catching up. */
+    static final int PAGE_SIZE = 500;
+    /** Wait before following the vault again after a failed catch-up, doubled on every failure up to a minute. */
+    static final Duration INITIAL_RETRY_DELAY = Duration.ofSeconds(5);
+    static final Duration MAX_RETRY_DELAY = Duration.ofMinutes(1);
+
+    private final NodeRPCConnection rpc;
+    private final Path snapshotPath;
+    private final long snapshotInterval;
+
+    /** Unconsumed transfers by state reference. */
+    private final Map<String, TransferRecord> live = new HashMap<>();
+    /** Approved amount per issuer. */
+    private final Map<String, Long> approvedTotals = new TreeMap<>();
+    /** Number of approvals per issuer. */
+    private final Map<String, Long> approvedCounts = new TreeMap<>();
+    /** References consumed while catching up, which the catch-up queries must not bring back. */
+    private final Set<String> consumedDuringCatchUp = new HashSet<>();
+    /** Vault time up to which every event is reflected in the model. */
+    private Instant position;
+    /** Latest vault time seen at the previous snapshot, committed as the position at the next one. */
+    private Instant pendingPosition;
+    /** Incremented on every change to the model. */
+    private long version;
+    /** Version last written to disk. */
+    private long snapshotVersion = -1;
+    private volatile boolean caughtUp;
+
+    /** Notified of every change to the model, under the model lock. */
+    private final List<Listener> listeners = new ArrayList<>();
+
+    private ScheduledExecutorService executor;
+    /** Proxy whose update feed the model follows, and the subscription to it, both used on the executor only. */
+    private CordaRPCOps following;
+    private Subscription subscription;
+    private Duration retryDelay = INITIAL_RETRY_DELAY;
+
+    /** Receives the transfers entering and leaving the model, e.g. to maintain a derived index. */
+    public interface Listener {
+        void added(TransferRecord record);
+        void removed(TransferRecord record);
+    }
+
+    public TransferReadModel(NodeRPCConnection rpc,
+                             @Value("${config.snapshot.path:read-model.snapshot}") String snapshotPath,
+                             @Value("${config.snapshot.interval:60}") long snapshotInterval) {
+        this.rpc = rpc;
+        this.snapshotPath = Paths.get(snapshotPath);
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Loads the snapshot in the background once the server is accepting requests, then catches up with the vault
+     * whenever the node is connected, again after every reconnection.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "read-model");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(() -> {
+            loadSnapshot();
+            rpc.onConnected(proxy -> executor.execute(() -> follow(proxy)));
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (Exception e) {
+                logger.warn("Read model snapshot failed", e);
+            }
+        }, snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (subscription != null) subscription.unsubscribe();
+        if (executor != null) executor.shutdownNow();
+        if (caughtUp) writeSnapshot();
+    }
+
+    /** Registers LISTENER and replays to it every transfer already in the model. */
+    public synchronized void addListener(Listener listener) {
+        live.values().forEach(listener::added);
+        listeners.add(listener);
+    }
+
+    /** Returns true once every vault event since the snapshot has been replayed, and while the feed is followed. */
+    public boolean isCaughtUp() {
+        return caughtUp;
+    }
+
+    /** Returns a number that changes whenever the model does. */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /** Returns the transfers awaiting approval, oldest request first. */
+    public synchronized List<TransferRecord> pending() {
+        List<TransferRecord> result = new ArrayList<>();
+        for (TransferRecord record : live.values()) {
+            if (!record.getApproved()) result.add(record);
+        }
+        result.sort(Comparator.comparing(TransferRecord::getRequestDate));
+        return result;
+    }
+
+    /** Returns the approved amount per issuer. */
+    public synchronized Map<String, Long> approvedTotals() {
+        return new TreeMap<>(approvedTotals);
+    }
+
+    /** Returns the number of approvals per issuer. */
+    public synchronized Map<String, Long> approvedCounts() {
+        return new TreeMap<>(approvedCounts);
+    }
+
+    /* APPLYING VAULT EVENTS. */
+
+    private synchronized void apply(Vault.Update<TransferState> update) {
+        for (StateAndRef<TransferState> consumed : update.getConsumed()) {
+            String ref = consumed.getRef().toString();
+            if (!caughtUp) consumedDuringCatchUp.add(ref);
+            remove(ref);
+        }
+        for (StateAndRef<TransferState> produced : update.getProduced()) {
+            put(TransferRecord.of(produced));
+        }
+    }
+
+    // Both operations are idempotent, as catching up may replay events the snapshot already reflects.
+    private void put(TransferRecord record) {
+        if (!caughtUp && consumedDuringCatchUp.contains(record.getRef())) return;
+        if (live.put(record.getRef(), record) == null) {
+            if (record.getApproved()) {
+                approvedTotals.merge(record.getIssuer(), record.getAmount(), Long::sum);
+                approvedCounts.merge(record.getIssuer(), 1L, Long::sum);
+            }
+            listeners.forEach(listener -> listener.added(record));
+        }
+        version++;
+    }
+
+    private void remove(String ref) {
+        TransferRecord record = live.remove(ref);
+        if (record != null) {
+            if (record.getApproved()) {
+                approvedTotals.merge(record.getIssuer(), -record.getAmount(), Long::sum);
+                approvedCounts.merge(record.getIssuer(), -1L, Long::sum);
+            }
+            listeners.forEach(listener -> listener.removed(record));
+        }
+        version++;
+    }
+
+    /* FOLLOWING THE VAULT. */
+
+    // Catches up with the vault through PROXY and follows its update feed, unless already doing so. A failure marks
+    // the model as behind and retries later, through a new connection if the old one was lost. Runs on the executor.
+    private void follow(CordaRPCOps proxy) {
+        if (proxy == following && subscription != null) return;
+        stopFollowing();
+        // Set first, so that a feed failure during the catch-up is noticed once it is over.
+        following = proxy;
+        try {
+            catchUp(proxy);
+            retryDelay = INITIAL_RETRY_DELAY;
+        } catch (RuntimeException e) {
+            logger.error("Read model failed to catch up with the vault, retrying in " + retryDelay.getSeconds() + " s", e);
+            stopFollowing();
+            if (e instanceof RPCException) rpc.connectionLost(proxy);
+            executor.schedule(this::retry, retryDelay.toMillis(), TimeUnit.MILLISECONDS);
+            retryDelay = retryDelay.multipliedBy(2).compareTo(MAX_RETRY_DELAY) > 0 ? MAX_RETRY_DELAY : retryDelay.multipliedBy(2);
+        }
+    }
+
+    private void retry() {
+        if (subscription != null) return;
+        try {
+            follow(rpc.proxy());
+        } catch (NodeRPCConnection.NotConnectedException e) {
+            // Followed again from onConnected once the node is back.
+        }
+    }
+
+    // The feed ends when the connection is lost: the model is behind until it has caught up again.
+    private void feedFailed(CordaRPCOps proxy, Throwable e) {
+        if (proxy != following) return;
+        logger.error("Vault update feed failed, catching up again", e);
+        stopFollowing();
+        rpc.connectionLost(proxy);
+        executor.schedule(this::retry, retryDelay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void stopFollowing() {
+        if (subscription != null) {
+            try {
+                subscription.unsubscribe();
+            } catch (RuntimeException e) {
+                logger.debug("Unsubscribing from a failed vault feed failed", e);
+            }
+        }
+        subscription = null;
+        following = null;
+        synchronized (this) {
+            if (caughtUp) version++;
+            caughtUp = false;
+        }
+    }
+
+    /**
+     * Subscribes to the vault update feed, then replays what was recorded and consumed since the snapshot position.
+     * Without a snapshot, every unconsumed transfer is read instead.
+     */
+    private void catchUp(CordaRPCOps proxy) {
+        // Subscribe first, so that nothing recorded while we query is missed.
+        DataFeed<Vault.Page<TransferState>, Vault.Update<TransferState>> feed = proxy.vaultTrackBy(
+                new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED), new PageSpecification(DEFAULT_PAGE_NUM, 1),
+                sortBy(Sort.VaultStateAttribute.RECORDED_TIME, Sort.Direction.ASC), TransferState.class);
+        subscription = feed.getUpdates().subscribe(this::apply, e -> executor.execute(() -> feedFailed(proxy, e)));
+
+        Instant head = latestVaultTime(proxy);
+        Instant since;
+        synchronized (this) {
+            since = position == null ? null : position.minus(CATCH_UP_OVERLAP);
+        }
+        long started = System.nanoTime();
+        // Consumed states are paged through too, so that consumption during the catch-up cannot shift the pages.
+        QueryCriteria.VaultQueryCriteria recorded = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.ALL);
+        if (since != null) recorded = recorded.withTimeCondition(after(QueryCriteria.TimeInstantType.RECORDED, since));
+        long replayed = forEachPage(proxy, recorded, Sort.VaultStateAttribute.RECORDED_TIME, results -> {
+            for (int i = 0; i < results.getStates().size(); i++) {
+                StateAndRef<TransferState> stateAndRef = results.getStates().get(i);
+                if (results.getStatesMetadata().get(i).getStatus() == Vault.StateStatus.UNCONSUMED) {
+                    put(TransferRecord.of(stateAndRef));
+                } else {
+                    remove(stateAndRef.getRef().toString());
+                }
+            }
+        });
+        if (since != null) {
+            QueryCriteria consumed = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.CONSUMED)
+                    .withTimeCondition(after(QueryCriteria.TimeInstantType.CONSUMED, since));
+            replayed += forEachPage(proxy, consumed, Sort.VaultStateAttribute.CONSUMED_TIME, results -> {
+                for (StateAndRef<TransferState> stateAndRef : results.getStates()) remove(stateAndRef.getRef().toString());
+            });
+        }
+        synchronized (this) {
+            caughtUp = true;
+            consumedDuringCatchUp.clear();
+            version++;
+            if (head != null) position = head;
+        }
+        logger.info("Read model caught up with {} vault events since {} in {} ms", replayed, since == null ? "the start" : since,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    // Applies CONSUMER to every page of transfers matching CRITERIA, under the model lock, and returns the number of
+    // transfers seen.
+    private long forEachPage(CordaRPCOps proxy, QueryCriteria criteria, Sort.VaultStateAttribute order, Consumer<Vault.Page<TransferState>> consumer) {
+        Sort sort = sortBy(order, Sort.Direction.ASC);
+        long seen = 0;
+        for (int page = DEFAULT_PAGE_NUM; ; page++) {
+            Vault.Page<TransferState> results = proxy.vaultQueryBy(criteria, new PageSpecification(page, PAGE_SIZE), sort, TransferState.class);
+            synchronized (this) {
+                consumer.accept(results);
+            }
+            seen += results.getStates().size();
+            if (results.getStates().isEmpty() || (long) page * PAGE_SIZE >= results.getTotalStatesAvailable()) return seen;
+        }
+    }
+
+    /** Returns the latest time a transfer was recorded or consumed in the vault, or null if there is none. */
+    private static Instant latestVaultTime(CordaRPCOps proxy) {
+        PageSpecification first = new PageSpecification(DEFAULT_PAGE_NUM, 1);
+        Vault.Page<TransferState> recorded = proxy.vaultQueryBy(new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.ALL), first,
+                sortBy(Sort.VaultStateAttribute.RECORDED_TIME, Sort.Direction.DESC), TransferState.class);
+        Vault.Page<TransferState> consumed = proxy.vaultQueryBy(new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.CONSUMED), first,
+                sortBy(Sort.VaultStateAttribute.CONSUMED_TIME, Sort.Direction.DESC), TransferState.class);
+        Instant latest = recorded.getStatesMetadata().isEmpty() ? null : recorded.getStatesMetadata().get(0).getRecordedTime();
+        if (!consumed.getStatesMetadata().isEmpty()) {
+            Instant consumedTime = consumed.getStatesMetadata().get(0).getConsumedTime();
+            if (consumedTime != null && (latest == null || consumedTime.isAfter(latest))) latest = consumedTime;
+        }
+        return latest;
+    }
+
+    private static QueryCriteria.TimeCondition after(QueryCriteria.TimeInstantType type, Instant since) {
+        return new QueryCriteria.TimeCondition(type, new ColumnPredicate.BinaryComparison<>(BinaryComparisonOperator.GREATER_THAN_OR_EQUAL, since));
+    }
+
+    private static Sort sortBy(Sort.VaultStateAttribute attribute, Sort.Direction direction) {
+        return new Sort(Collections.singleton(new Sort.SortColumn(new SortAttribute.Standard(attribute), direction)));
+    }
+
+    /* SNAPSHOTS. */
+
+    /** Contents of the snapshot file. */
+    private static class Snapshot implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int format;
+        private final Instant position;
+        private final HashMap<String, TransferRecord> live;
+        private final TreeMap<String, Long> approvedTotals;
+        private final TreeMap<String, Long> approvedCounts;
+
+        Snapshot(Instant position, Map<String, TransferRecord> live, Map<String, Long> approvedTotals, Map<String, Long> approvedCounts) {
+            this.format = SNAPSHOT_FORMAT;
+            this.position = position;
+            this.live = new HashMap<>(live);
+            this.approvedTotals = new TreeMap<>(approvedTotals);
+            this.approvedCounts = new TreeMap<>(approvedCounts);
+        }
+    }
+
+    private void loadSnapshot() {
+        if (!Files.exists(snapshotPath)) {
+            logger.info("No read model snapshot at {}, reading the vault from the start", snapshotPath);
+            return;
+        }
+        long started = System.nanoTime();
+        try (InputStream in = Files.newInputStream(snapshotPath); ObjectInputStream objects = new ObjectInputStream(in)) {
+            Snapshot snapshot = (Snapshot) objects.readObject();
+            if (snapshot.format != SNAPSHOT_FORMAT) {
+                logger.warn("Ignoring read model snapshot in format {}, expected {}", snapshot.format, SNAPSHOT_FORMAT);
+                return;
+            }
+            synchronized (this) {
+                live.putAll(snapshot.live);
+                for (TransferRecord record : snapshot.live.values()) {
+                    listeners.forEach(listener -> listener.added(record));
+                }
+                approvedTotals.putAll(snapshot.approvedTotals);
+                approvedCounts.putAll(snapshot.approvedCounts);
+                position = snapshot.position;
+                version++;
+                snapshotVersion = version;
+            }
+            logger.info("Loaded read model snapshot of {} transfers at {} in {} ms", snapshot.live.size(), snapshot.position,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            logger.warn("Ignoring unreadable read model snapshot at " + snapshotPath, e);
+        }
+    }
+
+    // Commits the vault position seen at the previous run, by now surely delivered through the feed, and writes the
+    // model if it changed. Skipped while the node is away, as the position cannot move on until it is back.
+    private void snapshot() throws IOException {
+        if (!caughtUp || !rpc.isConnected()) return;
+        Instant head = latestVaultTime(rpc.proxy());
+        synchronized (this) {
+            if (pendingPosition != null && (position == null || pendingPosition.isAfter(position))) {
+                position = pendingPosition;
+                version++;
+            }
+            pendingPosition = head;
+            if (version == snapshotVersion) return;
+        }
+        writeSnapshot();
+    }
+
+    private void writeSnapshot() throws IOException {
+        Snapshot snapshot;
+        synchronized (this) {
+            snapshot = new Snapshot(position, live, approvedTotals, approvedCounts);
+            snapshotVersion = version;
+        }
+        // Write next to the snapshot and move it into place, so that a crash never leaves a truncated file behind.
+        Path temporary = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary); ObjectOutputStream objects = new ObjectOutputStream(out)) {
+            objects.writeObject(snapshot);
+        }
+        Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.debug("Wrote read model snapshot of {} transfers at {}", snapshot.live.size(), snapshot.position);
+    }
+}
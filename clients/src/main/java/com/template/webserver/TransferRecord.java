@@ -0,0 +1,88 @@
+package com.template.webserver;
+
+import com.template.states.TransferState;
+import net.corda.core.contracts.StateAndRef;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Flat, serializable copy of an unconsumed TransferState held by the web server's read model.
+ */
+public class TransferRecord implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Reference of the state, as "txhash(index)" */
+    private final String ref;
+    private final String uid;
+    private final String issuer;
+    private final String requester;
+    private final long amount;
+    private final Instant requestDate;
+    private final Instant validUntil;
+    private final boolean approved;
+    private final String title;
+    private final String description;
+
+    public TransferRecord(String ref, String uid, String issuer, String requester, long amount, Instant requestDate,
+                          Instant validUntil, boolean approved, String title, String description) {
+        this.ref = ref;
+        this.uid = uid;
+        this.issuer = issuer;
+        this.requester = requester;
+        this.amount = amount;
+        this.requestDate = requestDate;
+        this.validUntil = validUntil;
+        this.approved = approved;
+        this.title = title;
+        this.description = description;
+    }
+
+    /** Returns the record of STATEANDREF. */
+    public static TransferRecord of(StateAndRef<TransferState> stateAndRef) {
+        TransferState state = stateAndRef.getState().getData();
+        return new TransferRecord(stateAndRef.getRef().toString(), state.getUid(), TransferExporter.nameOf(state.getIssuer()),
+                TransferExporter.nameOf(state.getRequester()), state.getAmount(), state.getRequestDate(), state.getValidUntil(),
+                state.getApprove(), state.getTitle(), state.getDescription());
+    }
+
+    public String getRef() {
+        return ref;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public String getRequester() {
+        return requester;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public Instant getRequestDate() {
+        return requestDate;
+    }
+
+    public Instant getValidUntil() {
+        return validUntil;
+    }
+
+    public boolean getApproved() {
+        return approved;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
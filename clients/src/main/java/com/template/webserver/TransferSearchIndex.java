@@ -0,0 +1,263 @@
+package com.template.webserver;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index over the words of transfer titles and descriptions, fed by the read model.
+ *
+ * Every transfer gets a document number in the order it is added, so each posting list only ever grows at its end
+ * and is stored as varint-encoded gaps between document numbers, each followed by the term frequency. Removed
+ * transfers are masked out and the index is rebuilt once they outnumber the live ones. Scores only count live
+ * transfers, so they do not drift as transfers come and go.
+ */
+@Component
+public class TransferSearchIndex implements TransferReadModel.Listener {
+    /** Weight of a word of the title relative to a word of the description. */
+    static final int TITLE_WEIGHT = 2;
+    /** Removed documents tolerated before the index is rebuilt, below which it is never rebuilt. */
+    static final int MIN_REBUILD = 1024;
+
+    /** Filter on approval status. */
+    public enum Status { ANY, PENDING, APPROVED }
+
+    /** A transfer matching a query, with its relevance. */
+    public static class Hit {
+        private final TransferRecord transfer;
+        private final double score;
+
+        Hit(TransferRecord transfer, double score) {
+            this.transfer = transfer;
+            this.score = score;
+        }
+
+        public TransferRecord getTransfer() {
+            return transfer;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /** Transfers by document number, null once removed. */
+    private TransferRecord[] documents = new TransferRecord[1024];
+    /** Number of document numbers given out. */
+    private int documentCount;
+    /** Document numbers of the live transfers, by state reference. */
+    private Map<String, Integer> documentsByRef = new HashMap<>();
+    /** Document numbers given out and since removed. */
+    private BitSet removed = new BitSet();
+    private int removedCount;
+    private Map<String, PostingList> postings = new HashMap<>();
+
+    // Spring picks the constructor to call only when there is a single one, hence the annotation.
+    @Autowired
+    public TransferSearchIndex(TransferReadModel readModel) {
+        readModel.addListener(this);
+    }
+
+    // An index fed by hand, for tests.
+    TransferSearchIndex() {
+    }
+
+    @Override
+    public void added(TransferRecord record) {
+        lock.writeLock().lock();
+        try {
+            if (!documentsByRef.containsKey(record.getRef())) index(record);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removed(TransferRecord record) {
+        lock.writeLock().lock();
+        try {
+            Integer document = documentsByRef.remove(record.getRef());
+            if (document == null) return;
+            documents[document] = null;
+            removed.set(document);
+            for (String word : frequencies(record).keySet()) postings.get(word).live--;
+            removedCount++;
+            if (removedCount > MIN_REBUILD && removedCount > documentsByRef.size()) rebuild();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Returns the number of transfers indexed. */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentsByRef.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the LIMIT transfers most relevant to the words of QUERY, best first. A transfer matches if it holds any
+     * of the words; rarer words and words of the title count for more. Only transfers with STATUS and, unless PARTY
+     * is null, issued or requested by PARTY are returned.
+     */
+    public List<Hit> search(String query, Status status, String party, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || limit <= 0) return Collections.emptyList();
+        lock.readLock().lock();
+        try {
+            // Accumulate scores in document order, one posting list at a time.
+            double[] scores = new double[documentCount];
+            BitSet matched = new BitSet(documentCount);
+            int live = documentsByRef.size();
+            for (String term : new LinkedHashSet<>(terms)) {
+                PostingList list = postings.get(term);
+                if (list == null || list.live == 0) continue;
+                double idf = Math.log(1 + (double) live / list.live);
+                list.forEach((document, frequency) -> {
+                    if (removed.get(document)) return;
+                    scores[document] += idf * (1 + Math.log(frequency));
+                    matched.set(document);
+                });
+            }
+            PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, (a, b) -> Double.compare(a.score, b.score));
+            for (int document = matched.nextSetBit(0); document >= 0; document = matched.nextSetBit(document + 1)) {
+                TransferRecord transfer = documents[document];
+                if (!accepts(transfer, status, party)) continue;
+                if (best.size() < limit || scores[document] > best.peek().score) {
+                    best.add(new Hit(transfer, scores[document]));
+                    if (best.size() > limit) best.poll();
+                }
+            }
+            List<Hit> result = new ArrayList<>(best);
+            result.sort((a, b) -> Double.compare(b.score, a.score));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean accepts(TransferRecord transfer, Status status, String party) {
+        if (status == Status.PENDING && transfer.getApproved()) return false;
+        if (status == Status.APPROVED && !transfer.getApproved()) return false;
+        return party == null || party.equals(transfer.getIssuer()) || party.equals(transfer.getRequester());
+    }
+
+    /** Returns the lower-cased words of TEXT, in order. */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) return words;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    // Must hold the write lock.
+    private void index(TransferRecord record) {
+        if (documentCount == documents.length) documents = Arrays.copyOf(documents, documents.length * 2);
+        int document = documentCount++;
+        documents[document] = record;
+        documentsByRef.put(record.getRef(), document);
+        frequencies(record).forEach((word, frequency) -> postings.computeIfAbsent(word, key -> new PostingList()).add(document, frequency));
+    }
+
+    /** Returns the weighted frequency of every word of the title and description of RECORD. */
+    private static Map<String, Integer> frequencies(TransferRecord record) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String word : tokenize(record.getTitle())) frequencies.merge(word, TITLE_WEIGHT, Integer::sum);
+        for (String word : tokenize(record.getDescription())) frequencies.merge(word, 1, Integer::sum);
+        return frequencies;
+    }
+
+    // Renumbers the live documents from zero, dropping the removed ones. Must hold the write lock.
+    private void rebuild() {
+        TransferRecord[] old = documents;
+        int oldCount = documentCount;
+        documents = new TransferRecord[Math.max(1024, Integer.highestOneBit(Math.max(1, documentsByRef.size())) * 2)];
+        documentCount = 0;
+        documentsByRef = new HashMap<>();
+        removed = new BitSet();
+        removedCount = 0;
+        postings = new HashMap<>();
+        for (int document = 0; document < oldCount; document++) {
+            if (old[document] != null) index(old[document]);
+        }
+    }
+
+    /** Document numbers in increasing order with their term frequencies, as varint-encoded gaps and frequencies. */
+    static class PostingList {
+        private byte[] bytes = new byte[8];
+        private int length;
+        private int last = -1;
+        /** Number of documents in the list. */
+        int count;
+        /** Number of documents in the list not removed since, the document frequency used in scores. */
+        int live;
+
+        interface Visitor {
+            void visit(int document, int frequency);
+        }
+
+        /** Appends DOCUMENT, which must be greater than every document already in the list. */
+        void add(int document, int frequency) {
+            writeVarint(document - last);
+            writeVarint(frequency);
+            last = document;
+            count++;
+            live++;
+        }
+
+        void forEach(Visitor visitor) {
+            int position = 0;
+            int document = -1;
+            while (position < length) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[position++];
+                    gap |= (b & 0x7f) << shift;
+                    if (b >= 0) break;
+                }
+                int frequency = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[position++];
+                    frequency |= (b & 0x7f) << shift;
+                    if (b >= 0) break;
+                }
+                document += gap;
+                visitor.visit(document, frequency);
+            }
+        }
+
+        private void writeVarint(int value) {
+            if (length + 5 > bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            while ((value & ~0x7f) != 0) {
+                bytes[length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.template.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.template.contracts.TemplateContract;
+import com.template.flows.ExportedTransaction;
+import com.template.states.TransferState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.CommandData;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.Crypto;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.AnonymousParty;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TransactionRecordsTests {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AnonymousParty issuer = new AnonymousParty(Crypto.generateKeyPair().getPublic());
+    private final AnonymousParty requester = new AnonymousParty(Crypto.generateKeyPair().getPublic());
+    private final Instant requestDate = Instant.parse("2020-01-01T10:00:00Z");
+    private final TransferState request = new TransferState(issuer, requester, Arrays.asList(issuer, requester), 100,
+            requestDate, requestDate.plus(Duration.ofDays(1)), false, "uid", "test", "description");
+    private final TransferState approval = new TransferState(issuer, requester, Arrays.asList(issuer, requester), 80,
+            requestDate, Instant.MAX, true, "uid", "test", "description");
+
+    private final SecureHash requestId = SecureHash.randomSHA256();
+
+    private ObjectNode requestRecord() {
+        List<Command<CommandData>> commands = Collections.singletonList(new Command<>(new TemplateContract.Commands.Request(),
+                Arrays.asList(issuer.getOwningKey(), requester.getOwningKey())));
+        return TransactionRecords.encode(mapper, new ExportedTransaction(requestId, requestDate.plus(Duration.ofMinutes(1)), commands,
+                Collections.emptyList(), Collections.emptyList(), Collections.singletonList(request), Collections.emptyList(), Collections.emptyList()));
+    }
+
+    private ObjectNode approvalRecord(Instant time) {
+        return approvalRecord(time, TemplateContract.Commands.Approve.of(approval));
+    }
+
+    private ObjectNode approvalRecord(Instant time, TemplateContract.Commands.Approve approve) {
+        List<Command<CommandData>> commands = Collections.singletonList(new Command<>(approve,
+                Arrays.asList(issuer.getOwningKey(), requester.getOwningKey())));
+        return TransactionRecords.encode(mapper, new ExportedTransaction(SecureHash.randomSHA256(), time, commands,
+                Collections.singletonList(new StateRef(requestId, 0)), Collections.singletonList(request),
+                Collections.singletonList(approval), Collections.emptyList(), Collections.emptyList()));
+    }
+
+    // Verifies BATCH, preceded by the record of the request, and returns the first failure if any.
+    private HistoryVerifier.Failure verify(List<String> batch) throws Exception {
+        batch.add(0, mapper.writeValueAsString(requestRecord()));
+        Map<String, Long> outputs = HistoryVerifier.indexOutputs(new BufferedReader(new StringReader(String.join("\n", batch))));
+        AtomicReference<HistoryVerifier.Failure> firstFailure = new AtomicReference<>();
+        ForkJoinPool.commonPool().invoke(new HistoryVerifier.VerifyTask(batch, 0, 0, batch.size(), outputs, firstFailure));
+        return firstFailure.get();
+    }
+
+    @Test
+    public void recordsRoundTripAndVerify() throws Exception {
+        Instant time = requestDate.plus(Duration.ofHours(1));
+        TemplateContract.Components components = TransactionRecords.decode(mapper.readTree(mapper.writeValueAsString(approvalRecord(time))));
+
+        assertEquals(time, components.getTime());
+        assertEquals(1, components.getCommands().size());
+        TemplateContract.Commands.Approve approve = (TemplateContract.Commands.Approve) components.getCommand(0).getValue();
+        assertEquals("uid", approve.getUid());
+        assertEquals(80, approve.getAmount());
+        TransferState output = (TransferState) components.getOutput(0);
+        assertEquals(approval.getUid(), output.getUid());
+        assertEquals(approval.getIssuer(), output.getIssuer());
+        assertEquals(approval.getAmount(), output.getAmount());
+        assertEquals(approval.getValidUntil(), output.getValidUntil());
+        assertEquals(request.getAmount(), ((TransferState) components.getInput(0)).getAmount());
+        TemplateContract.verify(components);
+    }
+
+    @Test
+    public void recordsWithoutATimeSkipTheTimeWindows() throws Exception {
+        TemplateContract.Components components = TransactionRecords.decode(mapper.readTree(mapper.writeValueAsString(approvalRecord(null))));
+
+        assertNull(components.getTime());
+        TemplateContract.verify(components);
+    }
+
+    @Test
+    public void approvalsMadeBeforeCommandsDescribedTheTransferStillVerify() throws Exception {
+        ObjectNode record = approvalRecord(requestDate.plus(Duration.ofHours(1)), new TemplateContract.Commands.Approve());
+        assertFalse(record.path("commands").get(0).has("uid"));
+
+        TemplateContract.verify(TransactionRecords.decode(mapper.readTree(mapper.writeValueAsString(record))));
+    }
+
+    @Test
+    public void recordsOutsideTheTimeWindowFail() throws Exception {
+        ObjectNode record = approvalRecord(requestDate.plus(Duration.ofDays(2)));
+        try {
+            TemplateContract.verify(TransactionRecords.decode(mapper.readTree(mapper.writeValueAsString(record))));
+            fail("A late approval should have been rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("TimeWindow not valid! Please decline the request.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void verifierReportsTheFirstTamperedRecord() throws Exception {
+        Instant time = requestDate.plus(Duration.ofHours(1));
+        List<String> batch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) batch.add(mapper.writeValueAsString(approvalRecord(time)));
+        // Approve more than was requested, as if the export had been edited afterwards.
+        ObjectNode tampered = approvalRecord(time);
+        ((ObjectNode) tampered.path("outputs").get(0)).put("amount", 150);
+        ((ObjectNode) tampered.path("commands").get(0)).put("amount", 150);
+        batch.add(mapper.writeValueAsString(tampered));
+        batch.add(mapper.writeValueAsString(approvalRecord(time)));
+
+        HistoryVerifier.Failure failure = verify(batch);
+        assertNotNull(failure);
+        assertEquals(5, failure.line);
+        assertEquals(tampered.path("id").asText(), failure.id);
+        assertEquals("Cannot approve more than requested", failure.reason);
+    }
+
+    @Test
+    public void verifierChecksInputsAgainstTheOutputsTheySpend() throws Exception {
+        Instant time = requestDate.plus(Duration.ofHours(1));
+        assertNull(verify(new ArrayList<>(Collections.singletonList(mapper.writeValueAsString(approvalRecord(time))))));
+
+        // Raise the requested amount in the approval alone, so that a larger approval passes the contract.
+        ObjectNode inflated = approvalRecord(time);
+        ((ObjectNode) inflated.path("inputs").get(0)).put("amount", 1000);
+        HistoryVerifier.Failure failure = verify(new ArrayList<>(Collections.singletonList(mapper.writeValueAsString(inflated))));
+        assertNotNull(failure);
+        assertEquals("Input " + TransactionRecords.ref(requestId.toString(), 0) + " does not match the output it refers to", failure.reason);
+
+        ObjectNode orphan = approvalRecord(time);
+        ((ArrayNode) orphan.path("inputRefs")).set(0, TextNode.valueOf(TransactionRecords.ref(requestId.toString(), 1)));
+        failure = verify(new ArrayList<>(Collections.singletonList(mapper.writeValueAsString(orphan))));
+        assertNotNull(failure);
+        assertEquals("Input " + TransactionRecords.ref(requestId.toString(), 1) + " is not an output of the export", failure.reason);
+    }
+}
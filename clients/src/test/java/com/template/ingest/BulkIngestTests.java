@@ -0,0 +1,64 @@
+package com.template.ingest;
+
+import net.corda.client.rpc.RPCException;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.UnexpectedFlowEndException;
+import net.corda.core.identity.CordaX500Name;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class BulkIngestTests {
+    @Test
+    public void plainFieldsAreSplitOnCommas() {
+        assertEquals(Arrays.asList("a", "b", "c", "10"), BulkIngest.parseCsv("a,b,c,10"));
+        assertEquals(Arrays.asList(""), BulkIngest.parseCsv(""));
+        assertEquals(Arrays.asList("a", ""), BulkIngest.parseCsv("a,"));
+    }
+
+    @Test
+    public void quotedFieldsKeepCommasAndQuotes() {
+        assertEquals(Arrays.asList("O=Issuer, L=London, C=GB", "Chairs", "Six \"office\" chairs", "120"),
+                BulkIngest.parseCsv("\"O=Issuer, L=London, C=GB\",Chairs,\"Six \"\"office\"\" chairs\",120"));
+        assertEquals(Arrays.asList("", "b"), BulkIngest.parseCsv("\"\",b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unterminatedQuotesAreRejected() {
+        BulkIngest.parseCsv("\"O=Issuer, L=London, C=GB,Chairs,Six chairs,120");
+    }
+
+    @Test
+    public void requestsAreCheckedLikeRequestFlow() {
+        BulkIngest.Request request = BulkIngest.Request.parse(Arrays.asList(" O=Issuer, L=London, C=GB ", "Chairs", "Six chairs", " 120 "));
+        assertEquals(new CordaX500Name("Issuer", "London", "GB"), request.issuer);
+        assertEquals(120, request.amount);
+        assertEquals(BulkIngest.Request.key("O=Issuer, L=London, C=GB", "Chairs", "Six chairs", 120), request.key());
+
+        assertRejected(Arrays.asList("O=Issuer, L=London, C=GB", "Chairs", "Six chairs"), "Expected issuer, title, description and amount");
+        assertRejected(Arrays.asList("O=Issuer, L=London, C=GB", "Chairs", "Six chairs", "ten"), "Invalid amount ten");
+        assertRejected(Arrays.asList("O=Issuer, L=London, C=GB", "Chairs", "Six chairs", "0"), "Invalid request value!");
+        assertRejected(Arrays.asList("O=Issuer, L=London, C=GB", "", "Six chairs", "120"), "Title and Description cannot be empty!");
+    }
+
+    @Test
+    public void onlyFlowFailuresAreCertain() {
+        assertFalse(BulkIngest.isInDoubt(new FlowException("Invalid request value!")));
+        assertTrue(BulkIngest.isInDoubt(new UnexpectedFlowEndException("Counterparty flow terminated early")));
+        assertTrue(BulkIngest.isInDoubt(new RPCException("Connection failure detected")));
+        assertTrue(BulkIngest.isInDoubt(new TimeoutException()));
+    }
+
+    private static void assertRejected(List<String> fields, String reason) {
+        try {
+            BulkIngest.Request.parse(fields);
+            fail("Expected " + reason);
+        } catch (IllegalArgumentException e) {
+            assertEquals(reason, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.template.ingest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IngestCheckpointTests {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // Key of the first line reading "request N".
+    private static String key(int n) {
+        return IngestCheckpoint.key(IngestCheckpoint.digest("request " + n), 1);
+    }
+
+    @Test
+    public void runsResumeFromTheLastEntryOfEveryLine() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("requests.csv.checkpoint");
+        try (IngestCheckpoint checkpoint = new IngestCheckpoint(path)) {
+            assertNull(checkpoint.status(key(1)));
+            checkpoint.submitted(key(1));
+            checkpoint.done(key(1), "uid1");
+            checkpoint.submitted(key(2));
+            checkpoint.failed(key(2), "Invalid\trequest\nvalue!");
+            checkpoint.submitted(key(3));
+            checkpoint.inDoubt(key(3), "Connection failure detected");
+            checkpoint.submitted(key(4));
+            checkpoint.submitted(key(5));
+            checkpoint.inDoubt(key(5), "timed out");
+            checkpoint.done(key(5), "uid5");
+        }
+
+        try (IngestCheckpoint checkpoint = new IngestCheckpoint(path)) {
+            assertEquals(IngestCheckpoint.Status.DONE, checkpoint.status(key(1)));
+            assertEquals(IngestCheckpoint.Status.FAILED, checkpoint.status(key(2)));
+            assertEquals(IngestCheckpoint.Status.IN_DOUBT, checkpoint.status(key(3)));
+            assertEquals(IngestCheckpoint.Status.SUBMITTED, checkpoint.status(key(4)));
+            assertEquals(IngestCheckpoint.Status.DONE, checkpoint.status(key(5)));
+            assertNull(checkpoint.status(key(6)));
+            assertTrue(checkpoint.isRecorded("uid1"));
+            assertTrue(checkpoint.isRecorded("uid5"));
+            assertFalse(checkpoint.isRecorded("uid3"));
+        }
+        // Reasons are kept to one field of one entry.
+        List<String> entries = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertTrue(entries.contains("F\t" + key(2) + "\tInvalid request value!"));
+    }
+
+    @Test
+    public void linesAreKnownByTheirContentsAndOccurrence() {
+        String digest = IngestCheckpoint.digest("O=Issuer,L=London,C=GB,Laptop,Replacement,100");
+        assertEquals(digest, IngestCheckpoint.digest("O=Issuer,L=London,C=GB,Laptop,Replacement,100"));
+        assertNotEquals(digest, IngestCheckpoint.digest("O=Issuer,L=London,C=GB,Laptop,Replacement,1000"));
+        assertNotEquals(IngestCheckpoint.key(digest, 1), IngestCheckpoint.key(digest, 2));
+    }
+
+    @Test
+    public void aTruncatedLastEntryIsIgnoredAndNotRunOn() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("requests.csv.checkpoint");
+        Files.write(path, ("S\t" + key(1) + "\nD\t" + key(1) + "\tuid1\nS\t" + key(2) + "\nD\t" + key(2)).getBytes(StandardCharsets.UTF_8));
+
+        try (IngestCheckpoint checkpoint = new IngestCheckpoint(path)) {
+            assertEquals(IngestCheckpoint.Status.DONE, checkpoint.status(key(1)));
+            assertEquals(IngestCheckpoint.Status.SUBMITTED, checkpoint.status(key(2)));
+            checkpoint.done(key(2), "uid2");
+        }
+        try (IngestCheckpoint checkpoint = new IngestCheckpoint(path)) {
+            assertEquals(IngestCheckpoint.Status.DONE, checkpoint.status(key(2)));
+            assertTrue(checkpoint.isRecorded("uid2"));
+        }
+    }
+
+    @Test
+    public void unreadableEntriesAreSkipped() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("requests.csv.checkpoint");
+        Files.write(path, ("S\tx\nS\t1\nS\nQ\t" + key(1) + "\nS\t" + key(1) + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE);
+
+        try (IngestCheckpoint checkpoint = new IngestCheckpoint(path)) {
+            assertEquals(IngestCheckpoint.Status.SUBMITTED, checkpoint.status(key(1)));
+            assertNull(checkpoint.status("1"));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.template.webserver;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TransferSearchIndexTests {
+    private static final String ISSUER = "O=Issuer,L=London,C=GB";
+    private static final String REQUESTER = "O=Requester,L=Paris,C=FR";
+
+    private static TransferRecord record(int n, boolean approved, String title, String description) {
+        return new TransferRecord("ref" + n, "uid" + n, ISSUER, REQUESTER, 100, Instant.EPOCH, Instant.MAX, approved, title, description);
+    }
+
+    private static double score(List<TransferSearchIndex.Hit> hits, String uid) {
+        for (TransferSearchIndex.Hit hit : hits) {
+            if (hit.getTransfer().getUid().equals(uid)) return hit.getScore();
+        }
+        throw new AssertionError(uid + " not found");
+    }
+
+    @Test
+    public void transfersAreFoundByTheWordsOfTheirTitleAndDescription() {
+        TransferSearchIndex index = new TransferSearchIndex();
+        index.added(record(1, false, "Office chairs", "Six chairs for the meeting room"));
+        index.added(record(2, false, "Laptop", "Replacement laptop"));
+
+        List<TransferSearchIndex.Hit> hits = index.search("CHAIRS", TransferSearchIndex.Status.ANY, null, 10);
+        assertEquals(1, hits.size());
+        assertEquals("uid1", hits.get(0).getTransfer().getUid());
+        assertTrue(index.search("printer", TransferSearchIndex.Status.ANY, null, 10).isEmpty());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void titleWordsRankAboveDescriptionWords() {
+        TransferSearchIndex index = new TransferSearchIndex();
+        index.added(record(1, false, "Travel", "Train to the laptop fair"));
+        index.added(record(2, false, "Laptop", "Replacement"));
+
+        List<TransferSearchIndex.Hit> hits = index.search("laptop", TransferSearchIndex.Status.ANY, null, 10);
+        assertEquals("uid2", hits.get(0).getTransfer().getUid());
+        assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+    }
+
+    @Test
+    public void searchFiltersOnStatusPartyAndLimit() {
+        TransferSearchIndex index = new TransferSearchIndex();
+        index.added(record(1, false, "Laptop", "Pending"));
+        index.added(record(2, true, "Laptop", "Approved"));
+
+        assertEquals("uid1", index.search("laptop", TransferSearchIndex.Status.PENDING, null, 10).get(0).getTransfer().getUid());
+        assertEquals("uid2", index.search("laptop", TransferSearchIndex.Status.APPROVED, null, 10).get(0).getTransfer().getUid());
+        assertEquals(2, index.search("laptop", TransferSearchIndex.Status.ANY, REQUESTER, 10).size());
+        assertTrue(index.search("laptop", TransferSearchIndex.Status.ANY, "O=Other,L=Rome,C=IT", 10).isEmpty());
+        assertEquals(1, index.search("laptop", TransferSearchIndex.Status.ANY, null, 1).size());
+    }
+
+    @Test
+    public void removedTransfersAreNotFound() {
+        TransferSearchIndex index = new TransferSearchIndex();
+        TransferRecord laptop = record(1, false, "Laptop", "Replacement");
+        index.added(laptop);
+        index.removed(laptop);
+
+        assertTrue(index.search("laptop", TransferSearchIndex.Status.ANY, null, 10).isEmpty());
+        assertEquals(0, index.size());
+        // Removing twice, or a transfer never added, changes nothing.
+        index.removed(laptop);
+        index.removed(record(2, false, "Chair", "Office"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void scoresOnlyCountLiveTransfers() {
+        TransferSearchIndex churned = new TransferSearchIndex();
+        churned.added(record(1, false, "Laptop", "Replacement"));
+        churned.added(record(2, false, "Chair", "Office"));
+        TransferRecord gone = record(3, false, "Laptop", "Spare");
+        churned.added(gone);
+        churned.removed(gone);
+
+        TransferSearchIndex fresh = new TransferSearchIndex();
+        fresh.added(record(1, false, "Laptop", "Replacement"));
+        fresh.added(record(2, false, "Chair", "Office"));
+
+        assertEquals(score(fresh.search("laptop", TransferSearchIndex.Status.ANY, null, 10), "uid1"),
+                score(churned.search("laptop", TransferSearchIndex.Status.ANY, null, 10), "uid1"), 0);
+    }
+
+    @Test
+    public void indexSurvivesRebuildsAfterManyRemovals() {
+        TransferSearchIndex index = new TransferSearchIndex();
+        int removedCount = TransferSearchIndex.MIN_REBUILD + 1;
+        for (int n = 0; n < removedCount; n++) index.added(record(n, false, "Chair", "Office"));
+        index.added(record(removedCount, false, "Laptop", "Replacement"));
+        for (int n = 0; n < removedCount; n++) index.removed(record(n, false, "Chair", "Office"));
+
+        assertEquals(1, index.size());
+        assertTrue(index.search("chair", TransferSearchIndex.Status.ANY, null, 10).isEmpty());
+        assertEquals("uid" + removedCount, index.search("laptop", TransferSearchIndex.Status.ANY, null, 10).get(0).getTransfer().getUid());
+    }
+}
@@ -0,0 +1,32 @@
+package com.template.webserver;
+
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TransferSearchIndexWiringTests {
+    @Test
+    public void theIndexSubscribesToTheReadModelItIsWiredWith() {
+        List<TransferReadModel.Listener> listeners = new ArrayList<>();
+        // The read model is never started, so the connection it would follow the vault through is not needed.
+        TransferReadModel readModel = new TransferReadModel(null, "read-model.snapshot", 60) {
+            @Override
+            public synchronized void addListener(Listener listener) {
+                listeners.add(listener);
+                super.addListener(listener);
+            }
+        };
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.registerBean(TransferReadModel.class, () -> readModel);
+            context.register(TransferSearchIndex.class);
+            context.refresh();
+
+            assertEquals(1, listeners.size());
+            assertSame(context.getBean(TransferSearchIndex.class), listeners.get(0));
+        }
+    }
+}
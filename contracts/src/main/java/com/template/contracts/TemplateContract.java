@@ -1,13 +1,24 @@
 package com.template.contracts;
 
+import com.template.states.BudgetState;
+import com.template.states.DrawdownState;
+import com.template.states.PeriodRootState;
 import com.template.states.TransferState;
 import net.corda.core.contracts.Command;
 import net.corda.core.contracts.CommandData;
 import net.corda.core.contracts.Contract;
-import net.corda.core.contracts.TransactionState;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.serialization.ConstructorForDeserialization;
+import net.corda.core.serialization.DeprecatedConstructorForDeserialization;
 import net.corda.core.transactions.LedgerTransaction;
 
+import java.security.PublicKey;
 import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 // ************
 // * Contract *
@@ -20,6 +31,18 @@ public class TemplateContract implements Contract {
     // does not throw an exception.
     @Override
     public void verify(LedgerTransaction tx) {
+        List<Command<CommandData>> commands = tx.getCommands().stream()
+                .map(command -> new Command<>(command.getValue(), command.getSigners()))
+                .collect(Collectors.toList());
+        verify(new Components(commands, tx.getInputStates(), tx.getOutputStates(), tx.getReferenceStates(), Instant.now()));
+    }
+
+    /**
+     * Checks the components of a transaction against the same rules as verify(LedgerTransaction), at the time of TX
+     * if it is known.
+     * Used to replay the transfer history offline, where no ledger transaction can be resolved.
+     */
+    public static void verify(Components tx) {
         if(tx.getCommands().size() != 1){
             throw new IllegalArgumentException("One command Expected");
         }
@@ -31,10 +54,18 @@ public class TemplateContract implements Contract {
             verifyApprove(tx);
         } else if (command.getValue() instanceof  Commands.Decline) {
             verifyDecline(tx);
+        } else if (command.getValue() instanceof Commands.CreateBudget) {
+            verifyCreateBudget(tx);
+        } else if (command.getValue() instanceof Commands.ConsolidateBudget) {
+            verifyConsolidateBudget(tx);
+        } else if (command.getValue() instanceof Commands.DrawBudget) {
+            verifyDrawBudget(tx);
+        } else if (command.getValue() instanceof Commands.PublishRoot) {
+            verifyPublishRoot(tx);
         }
     }
 
-    private void verifyRequest(LedgerTransaction tx) {
+    private static void verifyRequest(Components tx) {
         if(tx.getInputStates().size() != 0) throw new IllegalArgumentException("Zero Input Expected");
         if(tx.getOutputStates().size() != 1) throw new IllegalArgumentException("One Output Expected");
         TransferState output = (TransferState) tx.getOutput(0);
@@ -42,18 +73,19 @@ public class TemplateContract implements Contract {
         if (!command.getSigners().contains(output.getIssuer().getOwningKey()) || !command.getSigners().contains(output.getRequester().getOwningKey())) throw new IllegalArgumentException("Signers not present in the command!");
         if (command.getSigners().size()!=2) throw new IllegalArgumentException("Signers in command should be 2!");
 
-        if (!(output.getValidUntil().isAfter(Instant.now()) && output.getRequestDate().isBefore(Instant.now()))) throw new IllegalArgumentException("TimeWindow not valid!");
+        if (tx.getTime() != null && !(output.getValidUntil().isAfter(tx.getTime()) && output.getRequestDate().isBefore(tx.getTime()))) throw new IllegalArgumentException("TimeWindow not valid!");
         if (output.getApprove()) throw new IllegalArgumentException("Requester cannot approve this transfer on their own!");
         if (output.getAmount()<=0) throw new IllegalArgumentException("Invalid request value!");
         if (output.getTitle().isEmpty() || output.getDescription().isEmpty()) throw new IllegalArgumentException("Title and Description cannot be empty!");
 
     }
 
-    private void verifyApprove(LedgerTransaction tx) {
-        if(tx.getInputStates().size() != 1) throw new IllegalArgumentException("One Input Expected");
-        if(tx.getOutputStates().size() != 1) throw new IllegalArgumentException("One Output Expected");
-        TransferState output = (TransferState) tx.getOutput(0);
-        TransferState input = (TransferState) tx.getInput(0);
+    private static void verifyApprove(Components tx) {
+        // Budget shards are drawn down apart from the approval, see verifyDrawBudget.
+        if(tx.getInputStates().size() != 1 || tx.inputsOfType(TransferState.class).size() != 1) throw new IllegalArgumentException("One Input Expected");
+        if(tx.getOutputStates().size() != 1 || tx.outputsOfType(TransferState.class).size() != 1) throw new IllegalArgumentException("One Output Expected");
+        TransferState output = tx.outputsOfType(TransferState.class).get(0);
+        TransferState input = tx.inputsOfType(TransferState.class).get(0);
         Command command = tx.getCommand(0);
         if (!command.getSigners().contains(output.getIssuer().getOwningKey()) || !command.getSigners().contains(output.getRequester().getOwningKey())) throw new IllegalArgumentException("Signers not present in the command!");
         if (command.getSigners().size()!=2) throw new IllegalArgumentException("Signers in command should be 2!");
@@ -66,10 +98,20 @@ public class TemplateContract implements Contract {
         if (output.getAmount()<=0) throw new IllegalArgumentException("Cannot approve non-positive value!");
         if (!(output.getAllNodes().containsAll(input.getAllNodes()) && input.getAllNodes().containsAll(output.getAllNodes()))) throw new IllegalArgumentException("All nodes must remain the same.");
         if (input.getApprove() || !output.getApprove()) throw new IllegalArgumentException("Approve values invalid");
-        if (!(input.getValidUntil().isAfter(Instant.now()) && input.getRequestDate().isBefore(Instant.now()))) throw new IllegalArgumentException("TimeWindow not valid! Please decline the request.");
+        Commands.Approve approve = (Commands.Approve) command.getValue();
+        if (!describesATransfer(approve)) {
+            // Approvals made before the command described the transfer were notarised without this rule.
+            if (!tx.acceptsLegacyApprovals()) throw new IllegalArgumentException("Approve command must describe the approved transfer!");
+        } else if (!approve.describes(output)) throw new IllegalArgumentException("Approve command does not match the approved transfer!");
+        if (tx.getTime() != null && !(input.getValidUntil().isAfter(tx.getTime()) && input.getRequestDate().isBefore(tx.getTime()))) throw new IllegalArgumentException("TimeWindow not valid! Please decline the request.");
+    }
+
+    // Old approvals deserialize with no fields set.
+    private static boolean describesATransfer(Commands.Approve approve) {
+        return approve.getUid() != null && approve.getIssuer() != null && approve.getRequester() != null && approve.getRequestDate() != null;
     }
 
-    private void verifyDecline(LedgerTransaction tx) {
+    private static void verifyDecline(Components tx) {
         if(tx.getInputStates().size() != 1) throw new IllegalArgumentException("One Input Expected");
         if(tx.getOutputStates().size() != 0) throw new IllegalArgumentException("Zero Output Expected");
         TransferState input = (TransferState) tx.getInput(0);
@@ -80,10 +122,306 @@ public class TemplateContract implements Contract {
 
     }
 
+    // A new envelope may retire the exhausted shards of the issuer's previous ones, and nothing else.
+    private static void verifyCreateBudget(Components tx) {
+        List<BudgetState> inputs = tx.inputsOfType(BudgetState.class);
+        List<BudgetState> outputs = tx.outputsOfType(BudgetState.class);
+        if(inputs.size() != tx.getInputStates().size()) throw new IllegalArgumentException("Only budget shards Expected as input");
+        if(outputs.isEmpty() || outputs.size() != tx.getOutputStates().size()) throw new IllegalArgumentException("Only budget shards Expected");
+        BudgetState first = outputs.get(0);
+        if (first.getTotal() <= 0) throw new IllegalArgumentException("Invalid budget value!");
+        if (first.getShardCount() != outputs.size()) throw new IllegalArgumentException("Every shard of the envelope must be created!");
+        verifyEnvelope(outputs, first);
+        if (sumRemaining(outputs) != first.getTotal()) throw new IllegalArgumentException("Shards must add up to the envelope total!");
+        for (BudgetState input : inputs) {
+            if (!input.getIssuer().equals(first.getIssuer())) throw new IllegalArgumentException("Only the issuer's own shards can be retired!");
+            if (input.getRemaining() != 0) throw new IllegalArgumentException("Only exhausted shards can be retired!");
+        }
+        verifyBudgetSigner(tx, first);
+    }
+
+    private static void verifyConsolidateBudget(Components tx) {
+        List<BudgetState> inputs = tx.inputsOfType(BudgetState.class);
+        List<BudgetState> outputs = tx.outputsOfType(BudgetState.class);
+        if(inputs.isEmpty() || inputs.size() != tx.getInputStates().size()) throw new IllegalArgumentException("Only budget shards Expected as input");
+        if(outputs.size() != inputs.size() || outputs.size() != tx.getOutputStates().size()) throw new IllegalArgumentException("Every consumed shard must be reissued");
+        BudgetState first = inputs.get(0);
+        verifyEnvelope(inputs, first);
+        verifyEnvelope(outputs, first);
+        if (!shardIndexes(inputs).equals(shardIndexes(outputs))) throw new IllegalArgumentException("Shard indexes do not match!");
+        if (sumRemaining(inputs) != sumRemaining(outputs)) throw new IllegalArgumentException("Consolidation must not change the remaining allowance!");
+        verifyBudgetSigner(tx, first);
+    }
+
+    // Approvals draw down the budget in transactions of their own, which only the issuer sees: were the shard an input
+    // of the approval, every receiver of the approval would have to resolve the shard's history, made of every other
+    // approval of the issuer. Nothing on the ledger ties an approval to its drawdown, so the contract does not cap the
+    // approved totals, ApproveFlow does. The contract checks that every drawdown leaves a receipt, and that a negative
+    // amount only returns what one receipt took, for a transfer still pending when the refund is notarised.
+    private static void verifyDrawBudget(Components tx) {
+        List<BudgetState> inputs = tx.inputsOfType(BudgetState.class);
+        List<BudgetState> outputs = tx.outputsOfType(BudgetState.class);
+        List<DrawdownState> receiptsIn = tx.inputsOfType(DrawdownState.class);
+        List<DrawdownState> receiptsOut = tx.outputsOfType(DrawdownState.class);
+        Commands.DrawBudget draw = (Commands.DrawBudget) tx.getCommand(0).getValue();
+        if (draw.getUid() == null || draw.getUid().isEmpty()) throw new IllegalArgumentException("A drawdown must name the approved transfer!");
+        if (draw.getAmount() == 0) throw new IllegalArgumentException("Invalid drawdown value!");
+        if (draw.getAmount() > 0) {
+            // The amount is taken from several shards of the envelope when no single one holds it, each reissued in turn.
+            if(inputs.isEmpty()) throw new IllegalArgumentException("One Input Expected");
+            if(outputs.size() != inputs.size()) throw new IllegalArgumentException("Every drawn shard must be reissued");
+            if (tx.getInputStates().size() != inputs.size() || tx.getOutputStates().size() != outputs.size() + 1 || receiptsOut.size() != 1) throw new IllegalArgumentException("A drawdown must leave a receipt!");
+            if (!isReceipt(receiptsOut.get(0), inputs.get(0), draw.getUid(), draw.getAmount())) throw new IllegalArgumentException("Receipt does not match the drawdown!");
+        } else {
+            if(inputs.size() != 1) throw new IllegalArgumentException("One Input Expected");
+            if(outputs.size() != 1) throw new IllegalArgumentException("One Output Expected");
+            if (tx.getInputStates().size() != 2 || tx.getOutputStates().size() != 1 || receiptsIn.size() != 1) throw new IllegalArgumentException("A refund must consume the receipt of its drawdown!");
+            if (!isReceipt(receiptsIn.get(0), inputs.get(0), draw.getUid(), -draw.getAmount())) throw new IllegalArgumentException("Refund does not match its drawdown!");
+            List<TransferState> requests = tx.referencesOfType(TransferState.class);
+            if (tx.getReferenceStates().size() != 1 || requests.size() != 1) throw new IllegalArgumentException("A refund must reference the pending transfer request!");
+            TransferState request = requests.get(0);
+            if (!request.getUid().equals(draw.getUid()) || !request.getIssuer().equals(inputs.get(0).getIssuer()) || request.getApprove()) throw new IllegalArgumentException("A refund must reference the pending transfer request!");
+        }
+        BudgetState first = inputs.get(0);
+        for (int i = 0; i < inputs.size(); i++) {
+            BudgetState shardIn = inputs.get(i);
+            BudgetState shardOut = outputs.get(i);
+            if (!shardIn.getIssuer().equals(first.getIssuer()) || !shardIn.getEnvelopeId().equals(first.getEnvelopeId())) throw new IllegalArgumentException("Shards must belong to the same envelope!");
+            if (!shardIn.isSameShard(shardOut)) throw new IllegalArgumentException("Budget shard does not match!");
+            if (shardOut.getRemaining() < 0) throw new IllegalArgumentException("Cannot draw more than the budget shard holds!");
+            if (shardOut.getRemaining() > shardOut.getTotal()) throw new IllegalArgumentException("Cannot return more than the envelope holds!");
+            if (draw.getAmount() > 0 && shardOut.getRemaining() > shardIn.getRemaining()) throw new IllegalArgumentException("A drawdown cannot add to a budget shard!");
+        }
+        if (shardIndexes(inputs).size() != inputs.size()) throw new IllegalArgumentException("Shard indexes must be distinct!");
+        if (sumRemaining(inputs) - sumRemaining(outputs) != draw.getAmount()) throw new IllegalArgumentException("Budget shards must be drawn down by the command amount!");
+        verifyBudgetSigner(tx, first);
+    }
+
+    private static boolean isReceipt(DrawdownState receipt, BudgetState shard, String uid, long amount) {
+        return receipt.getIssuer().equals(shard.getIssuer()) && receipt.getEnvelopeId().equals(shard.getEnvelopeId())
+                && uid.equals(receipt.getUid()) && receipt.getAmount() == amount;
+    }
+
+    // Approved transfers are never consumed, so a period's tree only grows between publications.
+    private static void verifyPublishRoot(Components tx) {
+        List<PeriodRootState> inputs = tx.inputsOfType(PeriodRootState.class);
+        List<PeriodRootState> outputs = tx.outputsOfType(PeriodRootState.class);
+        if(inputs.size() > 1 || inputs.size() != tx.getInputStates().size()) throw new IllegalArgumentException("At most one previous root Expected");
+        if(outputs.size() != 1 || tx.getOutputStates().size() != 1) throw new IllegalArgumentException("One Output Expected");
+        PeriodRootState output = outputs.get(0);
+        if (!output.getPeriod().matches("\\d{4}-\\d{2}")) throw new IllegalArgumentException("Invalid period!");
+        if (output.getCount() <= 0) throw new IllegalArgumentException("Cannot publish an empty period!");
+        if (!inputs.isEmpty()) {
+            PeriodRootState input = inputs.get(0);
+            if (!input.getIssuer().equals(output.getIssuer()) || !input.getPeriod().equals(output.getPeriod())) throw new IllegalArgumentException("Previous root must be of the same issuer and period!");
+            if (output.getCount() < input.getCount()) throw new IllegalArgumentException("A period cannot lose approved transfers!");
+        }
+        List<PublicKey> signers = tx.getCommand(0).getSigners();
+        if (signers.size() != 1 || !signers.contains(output.getIssuer().getOwningKey())) throw new IllegalArgumentException("Only the issuer signs its period roots!");
+    }
+
+    // Every shard must belong to the same envelope as FIRST, hold a distinct valid index and a non-negative allowance.
+    private static void verifyEnvelope(List<BudgetState> shards, BudgetState first) {
+        for (BudgetState shard : shards) {
+            if (!shard.getIssuer().equals(first.getIssuer()) || !shard.getEnvelopeId().equals(first.getEnvelopeId())
+                    || shard.getShardCount() != first.getShardCount() || shard.getTotal() != first.getTotal()) throw new IllegalArgumentException("Shards must belong to the same envelope!");
+            if (shard.getShardIndex() < 0 || shard.getShardIndex() >= shard.getShardCount()) throw new IllegalArgumentException("Invalid shard index!");
+            if (shard.getRemaining() < 0) throw new IllegalArgumentException("Shard allowance cannot be negative!");
+        }
+        if (shardIndexes(shards).size() != shards.size()) throw new IllegalArgumentException("Shard indexes must be distinct!");
+    }
+
+    private static void verifyBudgetSigner(Components tx, BudgetState shard) {
+        List<PublicKey> signers = tx.getCommand(0).getSigners();
+        if (signers.size() != 1 || !signers.contains(shard.getIssuer().getOwningKey())) throw new IllegalArgumentException("Only the issuer signs its budget envelope!");
+    }
+
+    private static Set<Integer> shardIndexes(List<BudgetState> shards) {
+        Set<Integer> indexes = new HashSet<>();
+        for (BudgetState shard : shards) {
+            indexes.add(shard.getShardIndex());
+        }
+        return indexes;
+    }
+
+    private static long sumRemaining(List<BudgetState> shards) {
+        long sum = 0;
+        for (BudgetState shard : shards) {
+            sum = Math.addExact(sum, shard.getRemaining());
+        }
+        return sum;
+    }
+
+    /** The parts of a transaction our rules look at, with the time at which to check them. */
+    public static class Components {
+        private final List<Command<CommandData>> commands;
+        private final List<ContractState> inputs;
+        private final List<ContractState> outputs;
+        private final List<ContractState> references;
+        private final Instant time;
+        private final boolean legacyApprovals;
+
+        public Components(List<Command<CommandData>> commands, List<ContractState> inputs, List<ContractState> outputs,
+                          List<ContractState> references, Instant time) {
+            this(commands, inputs, outputs, references, time, false);
+        }
+
+        /**
+         * Components whose Approve commands may predate the fields describing the approved transfer if
+         * LEGACYAPPROVALS, as when replaying history notarised under earlier rules. Never so for new transactions.
+         */
+        public Components(List<Command<CommandData>> commands, List<ContractState> inputs, List<ContractState> outputs,
+                          List<ContractState> references, Instant time, boolean legacyApprovals) {
+            this.commands = commands;
+            this.inputs = inputs;
+            this.outputs = outputs;
+            this.references = references;
+            this.time = time;
+            this.legacyApprovals = legacyApprovals;
+        }
+
+        public List<Command<CommandData>> getCommands() {
+            return commands;
+        }
+
+        public Command<CommandData> getCommand(int index) {
+            return commands.get(index);
+        }
+
+        public List<ContractState> getInputStates() {
+            return inputs;
+        }
+
+        public List<ContractState> getOutputStates() {
+            return outputs;
+        }
+
+        /** States the transaction refers to without consuming them. */
+        public List<ContractState> getReferenceStates() {
+            return references;
+        }
+
+        public ContractState getInput(int index) {
+            return inputs.get(index);
+        }
+
+        public ContractState getOutput(int index) {
+            return outputs.get(index);
+        }
+
+        public <T extends ContractState> List<T> inputsOfType(Class<T> type) {
+            return ofType(inputs, type);
+        }
+
+        public <T extends ContractState> List<T> outputsOfType(Class<T> type) {
+            return ofType(outputs, type);
+        }
+
+        public <T extends ContractState> List<T> referencesOfType(Class<T> type) {
+            return ofType(references, type);
+        }
+
+        /** Time at which time-dependent rules are checked, or null to skip them when the time is not known. */
+        public Instant getTime() {
+            return time;
+        }
+
+        /** Returns true if Approve commands without the fields describing their transfer are accepted. */
+        public boolean acceptsLegacyApprovals() {
+            return legacyApprovals;
+        }
+
+        private static <T extends ContractState> List<T> ofType(List<ContractState> states, Class<T> type) {
+            return states.stream().filter(type::isInstance).map(type::cast).collect(Collectors.toList());
+        }
+    }
+
     // Used to indicate the transaction's intent.
     public interface Commands extends CommandData {
         class Request implements Commands {}
-        class Approve implements Commands {}
+        /**
+         * Approval of a transfer. Repeats the UID, amount, parties and date of the approved transfer, so that nodes
+         * outside the transfer can be shown this command alone, torn off the transaction, instead of the whole of it.
+         */
+        class Approve implements Commands {
+            private final String uid;
+            private final long amount;
+            private final AbstractParty issuer;
+            private final AbstractParty requester;
+            private final Instant requestDate;
+
+            /** Only reads approvals made before the fields existed, which only pass verify when replaying history. */
+            @DeprecatedConstructorForDeserialization(version = 1)
+            public Approve() {
+                this(null, 0, null, null, null);
+            }
+
+            @ConstructorForDeserialization
+            public Approve(String uid, long amount, AbstractParty issuer, AbstractParty requester, Instant requestDate) {
+                this.uid = uid;
+                this.amount = amount;
+                this.issuer = issuer;
+                this.requester = requester;
+                this.requestDate = requestDate;
+            }
+
+            /** Returns the command approving TRANSFER. */
+            public static Approve of(TransferState transfer) {
+                return new Approve(transfer.getUid(), transfer.getAmount(), transfer.getIssuer(), transfer.getRequester(), transfer.getRequestDate());
+            }
+
+            public String getUid() {
+                return uid;
+            }
+
+            public long getAmount() {
+                return amount;
+            }
+
+            public AbstractParty getIssuer() {
+                return issuer;
+            }
+
+            public AbstractParty getRequester() {
+                return requester;
+            }
+
+            public Instant getRequestDate() {
+                return requestDate;
+            }
+
+            /** Returns true if this command repeats the fields of TRANSFER. */
+            public boolean describes(TransferState transfer) {
+                return uid != null && issuer != null && requester != null && requestDate != null
+                        && uid.equals(transfer.getUid()) && amount == transfer.getAmount() && issuer.equals(transfer.getIssuer())
+                        && requester.equals(transfer.getRequester()) && requestDate.equals(transfer.getRequestDate());
+            }
+        }
         class Decline implements Commands {}
+        class CreateBudget implements Commands {}
+        class ConsolidateBudget implements Commands {}
+        /**
+         * Drawdown of AMOUNT from one or more shards of a budget envelope for the approval of transfer UID, leaving a
+         * DrawdownState receipt, or, if negative, the refund of that receipt while the request of transfer UID is still
+         * pending.
+         */
+        class DrawBudget implements Commands {
+            private final String uid;
+            private final long amount;
+
+            public DrawBudget(String uid, long amount) {
+                this.uid = uid;
+                this.amount = amount;
+            }
+
+            public String getUid() {
+                return uid;
+            }
+
+            public long getAmount() {
+                return amount;
+            }
+        }
+        class PublishRoot implements Commands {}
     }
 }
\ No newline at end of file
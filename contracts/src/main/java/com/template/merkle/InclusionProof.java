@@ -0,0 +1,102 @@
+package com.template.merkle;
+
+import com.template.states.TransferState;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.serialization.CordaSerializable;
+
+import java.util.List;
+
+/**
+ * Proof that a transfer is part of a TransferTree, checkable against a published root with nothing but the transfer
+ * itself. It holds the hashes around the transfer's node and one step per ancestor up to the root, so its size is
+ * the depth of the node: O(log n) in expectation.
+ */
+@CordaSerializable
+public class InclusionProof {
+    /** What one ancestor of the proven node adds to the hash on the way up. */
+    @CordaSerializable
+    public static class Step {
+        private final boolean leftChild;
+        private final SecureHash leaf;
+        private final SecureHash sibling;
+
+        public Step(boolean leftChild, SecureHash leaf, SecureHash sibling) {
+            this.leftChild = leftChild;
+            this.leaf = leaf;
+            this.sibling = sibling;
+        }
+
+        /** True if the subtree proven so far is the left child of this ancestor */
+        public boolean getLeftChild() {
+            return leftChild;
+        }
+
+        /** Leaf of the ancestor */
+        public SecureHash getLeaf() {
+            return leaf;
+        }
+
+        /** Hash of the ancestor's other subtree */
+        public SecureHash getSibling() {
+            return sibling;
+        }
+    }
+
+    private final String uid;
+    private final SecureHash leaf;
+    private final SecureHash left;
+    private final SecureHash right;
+    private final List<Step> steps;
+
+    public InclusionProof(String uid, SecureHash leaf, SecureHash left, SecureHash right, List<Step> steps) {
+        this.uid = uid;
+        this.leaf = leaf;
+        this.left = left;
+        this.right = right;
+        this.steps = steps;
+    }
+
+    /** UID of the proven transfer */
+    public String getUid() {
+        return uid;
+    }
+
+    /** Leaf of the proven transfer */
+    public SecureHash getLeaf() {
+        return leaf;
+    }
+
+    /** Hash of the left subtree of the proven node */
+    public SecureHash getLeft() {
+        return left;
+    }
+
+    /** Hash of the right subtree of the proven node */
+    public SecureHash getRight() {
+        return right;
+    }
+
+    /** Ancestors of the proven node, from its parent up to the root */
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /** Returns the root hash this proof leads to. */
+    public SecureHash computeRoot() {
+        SecureHash hash = TransferTree.nodeHash(left, leaf, right);
+        for (Step step : steps) {
+            hash = step.leftChild ? TransferTree.nodeHash(hash, step.leaf, step.sibling) : TransferTree.nodeHash(step.sibling, step.leaf, hash);
+        }
+        return hash;
+    }
+
+    /** Returns true if this proof places its leaf under ROOT. */
+    public boolean verify(SecureHash root) {
+        return computeRoot().equals(root);
+    }
+
+    /** Returns true if this proof places TRANSFER, as it stands, under ROOT. */
+    public boolean verify(TransferState transfer, SecureHash root) {
+        return uid.equals(transfer.getUid()) && leaf.equals(TransferTree.leafHash(transfer)) && verify(root);
+    }
+}
@@ -0,0 +1,204 @@
+package com.template.merkle;
+
+import com.template.states.TransferState;
+import net.corda.core.crypto.SecureHash;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Merkle tree over the approved transfers of a period, ordered by UID.
+ *
+ * The tree is a treap: a binary search tree on UIDs whose shape is fixed by priorities derived from the UIDs
+ * themselves, so the same set of transfers always gives the same root whatever the order they were added in, and its
+ * depth stays logarithmic in expectation. Every node commits to its left subtree, its own leaf and its right subtree.
+ *
+ * Trees are immutable. Adding a transfer copies only the path to it, so older trees, such as the one last published,
+ * stay valid alongside newer ones at a cost of O(log n) new nodes per approval.
+ */
+public final class TransferTree {
+    /** Hash of an empty subtree. */
+    public static final SecureHash EMPTY = new SecureHash.SHA256(new byte[32]);
+    /** The tree without any transfer. */
+    public static final TransferTree EMPTY_TREE = new TransferTree(null);
+
+    static final byte LEAF_TAG = 0;
+    static final byte NODE_TAG = 1;
+
+    private static final DateTimeFormatter PERIOD_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM").withZone(ZoneOffset.UTC);
+
+    private final Node root;
+
+    private TransferTree(Node root) {
+        this.root = root;
+    }
+
+    /** Returns the period, as "yyyy-MM" in UTC, whose budget a transfer requested at REQUESTDATE belongs to. */
+    public static String period(Instant requestDate) {
+        return PERIOD_FORMAT.format(requestDate);
+    }
+
+    /** Returns the leaf committing to the fields of TRANSFER an auditor checks: UID, parties, amount and date. */
+    public static SecureHash leafHash(TransferState transfer) {
+        byte[] uid = transfer.getUid().getBytes(StandardCharsets.UTF_8);
+        byte[] issuer = transfer.getIssuer().getOwningKey().getEncoded();
+        byte[] requester = transfer.getRequester().getOwningKey().getEncoded();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + uid.length + 4 + issuer.length + 4 + requester.length + 8 + 12);
+        buffer.put(LEAF_TAG);
+        buffer.putInt(uid.length).put(uid);
+        buffer.putInt(issuer.length).put(issuer);
+        buffer.putInt(requester.length).put(requester);
+        buffer.putLong(transfer.getAmount());
+        buffer.putLong(transfer.getRequestDate().getEpochSecond()).putInt(transfer.getRequestDate().getNano());
+        return sha256(buffer.array());
+    }
+
+    /** Returns the hash of a node with subtrees LEFT and RIGHT around LEAF. */
+    static SecureHash nodeHash(SecureHash left, SecureHash leaf, SecureHash right) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 3 * 32);
+        buffer.put(NODE_TAG).put(left.getBytes()).put(leaf.getBytes()).put(right.getBytes());
+        return sha256(buffer.array());
+    }
+
+    /** Returns the root hash, or EMPTY if the tree holds no transfer. */
+    public SecureHash getRoot() {
+        return hashOf(root);
+    }
+
+    /** Returns the number of transfers in the tree. */
+    public int size() {
+        return root == null ? 0 : root.size;
+    }
+
+    /** Returns true if the tree holds UID. */
+    public boolean contains(String uid) {
+        return find(uid) != null;
+    }
+
+    /** Returns the leaf of UID, or null if the tree does not hold it. */
+    public SecureHash leaf(String uid) {
+        Node node = find(uid);
+        return node == null ? null : node.leaf;
+    }
+
+    /** Returns the UIDs in the tree, in order. */
+    public List<String> uids() {
+        List<String> uids = new ArrayList<>(size());
+        collect(root, uids);
+        return uids;
+    }
+
+    /** Returns a tree that also holds UID with LEAF, replacing any leaf UID had. This tree is left unchanged. */
+    public TransferTree with(String uid, SecureHash leaf) {
+        Node existing = find(uid);
+        if (existing != null && existing.leaf.equals(leaf)) return this;
+        return new TransferTree(insert(root, uid, priority(uid), leaf));
+    }
+
+    /** Returns the proof that UID is in the tree, or null if it is not. */
+    public InclusionProof proof(String uid) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        while (node != null) {
+            path.add(node);
+            int order = uid.compareTo(node.uid);
+            if (order == 0) break;
+            node = order < 0 ? node.left : node.right;
+        }
+        if (node == null) return null;
+
+        // Walk back up from the transfer, recording what each ancestor adds to the hash.
+        List<InclusionProof.Step> steps = new ArrayList<>(path.size() - 1);
+        for (int i = path.size() - 2; i >= 0; i--) {
+            Node ancestor = path.get(i);
+            boolean leftChild = ancestor.left == path.get(i + 1);
+            steps.add(new InclusionProof.Step(leftChild, ancestor.leaf, hashOf(leftChild ? ancestor.right : ancestor.left)));
+        }
+        return new InclusionProof(uid, node.leaf, hashOf(node.left), hashOf(node.right), Collections.unmodifiableList(steps));
+    }
+
+    private static void collect(Node node, List<String> uids) {
+        if (node == null) return;
+        collect(node.left, uids);
+        uids.add(node.uid);
+        collect(node.right, uids);
+    }
+
+    private Node find(String uid) {
+        Node node = root;
+        while (node != null) {
+            int order = uid.compareTo(node.uid);
+            if (order == 0) return node;
+            node = order < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    private static Node insert(Node node, String uid, long priority, SecureHash leaf) {
+        if (node == null) return new Node(uid, priority, leaf, null, null);
+        int order = uid.compareTo(node.uid);
+        if (order == 0) return new Node(node.uid, node.priority, leaf, node.left, node.right);
+        if (order < 0) {
+            Node left = insert(node.left, uid, priority, leaf);
+            // Rotate right if the new node outranks its parent.
+            if (outranks(left, node)) return new Node(left.uid, left.priority, left.leaf, left.left,
+                    new Node(node.uid, node.priority, node.leaf, left.right, node.right));
+            return new Node(node.uid, node.priority, node.leaf, left, node.right);
+        } else {
+            Node right = insert(node.right, uid, priority, leaf);
+            // Rotate left if the new node outranks its parent.
+            if (outranks(right, node)) return new Node(right.uid, right.priority, right.leaf,
+                    new Node(node.uid, node.priority, node.leaf, node.left, right.left), right.right);
+            return new Node(node.uid, node.priority, node.leaf, node.left, right);
+        }
+    }
+
+    private static boolean outranks(Node a, Node b) {
+        int order = Long.compareUnsigned(a.priority, b.priority);
+        return order > 0 || (order == 0 && a.uid.compareTo(b.uid) < 0);
+    }
+
+    private static long priority(String uid) {
+        return ByteBuffer.wrap(sha256(uid.getBytes(StandardCharsets.UTF_8)).getBytes()).getLong();
+    }
+
+    private static SecureHash hashOf(Node node) {
+        return node == null ? EMPTY : node.hash;
+    }
+
+    private static SecureHash sha256(byte[] bytes) {
+        try {
+            return new SecureHash.SHA256(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-256");
+        }
+    }
+
+    private static final class Node {
+        final String uid;
+        final long priority;
+        final SecureHash leaf;
+        final Node left;
+        final Node right;
+        final SecureHash hash;
+        final int size;
+
+        Node(String uid, long priority, SecureHash leaf, Node left, Node right) {
+            this.uid = uid;
+            this.priority = priority;
+            this.leaf = leaf;
+            this.left = left;
+            this.right = right;
+            this.hash = nodeHash(hashOf(left), leaf, hashOf(right));
+            this.size = 1 + (left == null ? 0 : left.size) + (right == null ? 0 : right.size);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.template.schemas;
+
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.Collections;
+
+/**
+ * Version 1 of the TransferState schema: the columns vault queries filter transfers on, so that filters run in the
+ * database instead of over every page of states.
+ */
+public class TransferSchemaV1 extends MappedSchema {
+    public TransferSchemaV1() {
+        super(TransferSchema.class, 1, Collections.singletonList(PersistentTransfer.class));
+    }
+
+    @Override
+    public String getMigrationResource() {
+        return "transfer.changelog-master";
+    }
+
+    /** Returns the X.500 name of PARTY as stored in the party columns, or null if it is anonymous. */
+    public static String nameOf(AbstractParty party) {
+        CordaX500Name name = party.nameOrNull();
+        return name == null ? null : name.toString();
+    }
+
+    @Entity
+    @Table(name = "transfer_states", indexes = {
+            @Index(name = "transfer_states_uid_idx", columnList = "uid"),
+            @Index(name = "transfer_states_request_date_idx", columnList = "request_date")})
+    public static class PersistentTransfer extends PersistentState {
+        @Column(name = "uid")
+        private final String uid;
+        @Column(name = "issuer_name")
+        private final String issuerName;
+        @Column(name = "requester_name")
+        private final String requesterName;
+        @Column(name = "amount")
+        private final long amount;
+        @Column(name = "request_date")
+        private final Instant requestDate;
+        @Column(name = "approved")
+        private final boolean approved;
+
+        public PersistentTransfer(String uid, String issuerName, String requesterName, long amount, Instant requestDate, boolean approved) {
+            this.uid = uid;
+            this.issuerName = issuerName;
+            this.requesterName = requesterName;
+            this.amount = amount;
+            this.requestDate = requestDate;
+            this.approved = approved;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentTransfer() {
+            this(null, null, null, 0, null, false);
+        }
+
+        public String getUid() {
+            return uid;
+        }
+
+        public String getIssuerName() {
+            return issuerName;
+        }
+
+        public String getRequesterName() {
+            return requesterName;
+        }
+
+        public long getAmount() {
+            return amount;
+        }
+
+        public Instant getRequestDate() {
+            return requestDate;
+        }
+
+        public boolean getApproved() {
+            return approved;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.template.states;
+
+import com.template.contracts.TemplateContract;
+import net.corda.core.contracts.BelongsToContract;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.identity.AbstractParty;
+
+import java.util.Collections;
+import java.util.List;
+
+// *********
+// * State *
+// *********
+/**
+ * One shard of an issuer's budget envelope. The envelope allowance is split across ShardCount shards so that
+ * concurrent approvals can each draw down a different shard instead of racing for a single state.
+ * Shards are drawn down in issuer-only transactions apart from the approvals, so that their history, which holds
+ * every approval of the issuer, is never sent to the requesters.
+ */
+@BelongsToContract(TemplateContract.class)
+public class BudgetState implements ContractState {
+
+    /** Issuer whose approvals are capped by this envelope */
+    private final AbstractParty Issuer;
+
+    /** Identifier shared by every shard of the same envelope */
+    private final String EnvelopeId;
+
+    /** Position of this shard within the envelope, from 0 to ShardCount - 1 */
+    private final int ShardIndex;
+
+    /** Number of shards the envelope is split into */
+    private final int ShardCount;
+
+    /** Allowance of the whole envelope at creation */
+    private final long Total;
+
+    /** Allowance still available in this shard */
+    private final long Remaining;
+
+    /** Constructor */
+    public BudgetState(AbstractParty issuer, String envelopeId, int shardIndex, int shardCount, long total, long remaining) {
+        Issuer = issuer;
+        EnvelopeId = envelopeId;
+        ShardIndex = shardIndex;
+        ShardCount = shardCount;
+        Total = total;
+        Remaining = remaining;
+    }
+
+    /** Issuer getter */
+    public AbstractParty getIssuer() {
+        return Issuer;
+    }
+
+    /** EnvelopeId getter */
+    public String getEnvelopeId() {
+        return EnvelopeId;
+    }
+
+    /** ShardIndex getter */
+    public int getShardIndex() {
+        return ShardIndex;
+    }
+
+    /** ShardCount getter */
+    public int getShardCount() {
+        return ShardCount;
+    }
+
+    /** Total getter */
+    public long getTotal() {
+        return Total;
+    }
+
+    /** Remaining getter */
+    public long getRemaining() {
+        return Remaining;
+    }
+
+    /** Returns a copy of this shard holding REMAINING. */
+    public BudgetState withRemaining(long remaining) {
+        return new BudgetState(Issuer, EnvelopeId, ShardIndex, ShardCount, Total, remaining);
+    }
+
+    /** Returns true if OTHER is the same shard of the same envelope, whatever its remaining allowance. */
+    public boolean isSameShard(BudgetState other) {
+        return Issuer.equals(other.Issuer) && EnvelopeId.equals(other.EnvelopeId) && ShardIndex == other.ShardIndex
+                && ShardCount == other.ShardCount && Total == other.Total;
+    }
+
+    @Override
+    public List<AbstractParty> getParticipants() {
+        return Collections.singletonList(Issuer);
+    }
+}
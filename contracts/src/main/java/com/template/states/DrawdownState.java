@@ -0,0 +1,66 @@
+package com.template.states;
+
+import com.template.contracts.TemplateContract;
+import net.corda.core.contracts.BelongsToContract;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.identity.AbstractParty;
+
+import java.util.Collections;
+import java.util.List;
+
+// *********
+// * State *
+// *********
+/**
+ * Receipt of an amount drawn from an issuer's budget envelope for the approval of one transfer. It stays unconsumed
+ * once the approval is through, and is consumed by the refund if the approval fails, so that a refund always
+ * returns exactly what one drawdown took.
+ */
+@BelongsToContract(TemplateContract.class)
+public class DrawdownState implements ContractState {
+
+    /** Issuer whose envelope was drawn down */
+    private final AbstractParty Issuer;
+
+    /** Envelope the amount was drawn from */
+    private final String EnvelopeId;
+
+    /** UID of the transfer the amount was drawn for */
+    private final String Uid;
+
+    /** Amount drawn */
+    private final long Amount;
+
+    /** Constructor */
+    public DrawdownState(AbstractParty issuer, String envelopeId, String uid, long amount) {
+        Issuer = issuer;
+        EnvelopeId = envelopeId;
+        Uid = uid;
+        Amount = amount;
+    }
+
+    /** Issuer getter */
+    public AbstractParty getIssuer() {
+        return Issuer;
+    }
+
+    /** EnvelopeId getter */
+    public String getEnvelopeId() {
+        return EnvelopeId;
+    }
+
+    /** Uid getter */
+    public String getUid() {
+        return Uid;
+    }
+
+    /** Amount getter */
+    public long getAmount() {
+        return Amount;
+    }
+
+    @Override
+    public List<AbstractParty> getParticipants() {
+        return Collections.singletonList(Issuer);
+    }
+}
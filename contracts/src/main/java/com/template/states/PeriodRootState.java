@@ -0,0 +1,66 @@
+package com.template.states;
+
+import com.template.contracts.TemplateContract;
+import net.corda.core.contracts.BelongsToContract;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.AbstractParty;
+
+import java.util.Collections;
+import java.util.List;
+
+// *********
+// * State *
+// *********
+/**
+ * Root of the Merkle tree over an issuer's approved transfers of one period, as published by the issuer. Auditors
+ * check inclusion proofs for single transfers against it instead of downloading the ledger.
+ */
+@BelongsToContract(TemplateContract.class)
+public class PeriodRootState implements ContractState {
+
+    /** Issuer whose approvals are committed to */
+    private final AbstractParty Issuer;
+
+    /** Period of the request dates, as "yyyy-MM" in UTC */
+    private final String Period;
+
+    /** Root of the TransferTree over the approved transfers of the period */
+    private final SecureHash Root;
+
+    /** Number of approved transfers under the root */
+    private final int Count;
+
+    /** Constructor */
+    public PeriodRootState(AbstractParty issuer, String period, SecureHash root, int count) {
+        Issuer = issuer;
+        Period = period;
+        Root = root;
+        Count = count;
+    }
+
+    /** Issuer getter */
+    public AbstractParty getIssuer() {
+        return Issuer;
+    }
+
+    /** Period getter */
+    public String getPeriod() {
+        return Period;
+    }
+
+    /** Root getter */
+    public SecureHash getRoot() {
+        return Root;
+    }
+
+    /** Count getter */
+    public int getCount() {
+        return Count;
+    }
+
+    @Override
+    public List<AbstractParty> getParticipants() {
+        return Collections.singletonList(Issuer);
+    }
+}
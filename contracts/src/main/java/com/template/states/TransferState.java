@@ -1,19 +1,23 @@
 package com.template.states;
 
 import com.template.contracts.TemplateContract;
+import com.template.schemas.TransferSchemaV1;
 import net.corda.core.contracts.BelongsToContract;
-import net.corda.core.contracts.ContractState;
 import net.corda.core.identity.AbstractParty;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.QueryableState;
 
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 // *********
 // * State *
 // *********
 @BelongsToContract(TemplateContract.class)
-public class TransferState implements ContractState {
+public class TransferState implements QueryableState {
 
     private final String Uid;
     /** Issuer of the money */
@@ -106,4 +110,15 @@ public class TransferState implements ContractState {
     public List<AbstractParty> getParticipants() {
         return Approve ? AllNodes : Arrays.asList(Issuer, Requester);
     }
-}
\ No newline at end of file
+
+    @Override
+    public PersistentState generateMappedObject(MappedSchema schema) {
+        if (!(schema instanceof TransferSchemaV1)) throw new IllegalArgumentException("Unrecognised schema " + schema);
+        return new TransferSchemaV1.PersistentTransfer(Uid, TransferSchemaV1.nameOf(Issuer), TransferSchemaV1.nameOf(Requester), Amount, RequestDate, Approve);
+    }
+
+    @Override
+    public Iterable<MappedSchema> supportedSchemas() {
+        return Collections.singletonList(new TransferSchemaV1());
+    }
+}
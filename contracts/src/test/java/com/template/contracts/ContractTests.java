@@ -1,13 +1,298 @@
 package com.template.contracts;
 
+import com.template.states.BudgetState;
+import com.template.states.DrawdownState;
+import com.template.states.TransferState;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.testing.core.TestIdentity;
 import net.corda.testing.node.MockServices;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static net.corda.testing.node.NodeTestUtils.transaction;
+
 public class ContractTests {
-    private final MockServices ledgerServices = new MockServices();
+    private final MockServices ledgerServices = new MockServices(Arrays.asList("com.template.contracts"));
+    private final TestIdentity issuer = new TestIdentity(new CordaX500Name("Issuer", "London", "GB"));
+    private final TestIdentity requester = new TestIdentity(new CordaX500Name("Requester", "Paris", "FR"));
+
+    private BudgetState shard(String envelopeId, int index, int count, long total, long remaining) {
+        return new BudgetState(issuer.getParty(), envelopeId, index, count, total, remaining);
+    }
+
+    private DrawdownState receipt(String envelopeId, long amount) {
+        return new DrawdownState(issuer.getParty(), envelopeId, "uid", amount);
+    }
+
+    private TransferState request(long amount) {
+        Instant requestDate = Instant.now().minus(Duration.ofHours(1));
+        return new TransferState(issuer.getParty(), requester.getParty(), Arrays.asList(issuer.getParty(), requester.getParty()),
+                amount, requestDate, requestDate.plus(Duration.ofDays(1)), false, "uid", "test", "description");
+    }
+
+    private TransferState approval(TransferState request, long amount) {
+        return new TransferState(request.getIssuer(), request.getRequester(), request.getAllNodes(), amount,
+                request.getRequestDate(), Instant.MAX, true, request.getUid(), request.getTitle(), request.getDescription());
+    }
 
     @Test
     public void dummyTest() {
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void createBudgetSplitsTheEnvelopeIntoShards() {
+        transaction(ledgerServices, tx -> {
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.output(TemplateContract.ID, shard("e", 1, 2, 100, 50));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.CreateBudget());
+            return tx.verifies();
+        });
+        transaction(ledgerServices, tx -> {
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.output(TemplateContract.ID, shard("e", 1, 2, 100, 40));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.CreateBudget());
+            return tx.failsWith("Shards must add up to the envelope total!");
+        });
+        transaction(ledgerServices, tx -> {
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 100));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.CreateBudget());
+            return tx.failsWith("Every shard of the envelope must be created!");
+        });
+        transaction(ledgerServices, tx -> {
+            tx.output(TemplateContract.ID, shard("e", 0, 1, 100, 100));
+            tx.command(requester.getPublicKey(), new TemplateContract.Commands.CreateBudget());
+            return tx.failsWith("Only the issuer signs its budget envelope!");
+        });
+    }
+
+    @Test
+    public void createBudgetOnlyRetiresExhaustedShards() {
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("old", 0, 1, 100, 0));
+            tx.output(TemplateContract.ID, shard("new", 0, 1, 200, 200));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.CreateBudget());
+            return tx.verifies();
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("old", 0, 1, 100, 10));
+            tx.output(TemplateContract.ID, shard("new", 0, 1, 200, 200));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.CreateBudget());
+            return tx.failsWith("Only exhausted shards can be retired!");
+        });
+    }
+
+    @Test
+    public void consolidateBudgetKeepsTheRemainingAllowance() {
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 10));
+            tx.input(TemplateContract.ID, shard("e", 1, 2, 100, 30));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 20));
+            tx.output(TemplateContract.ID, shard("e", 1, 2, 100, 20));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.ConsolidateBudget());
+            return tx.verifies();
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 10));
+            tx.input(TemplateContract.ID, shard("e", 1, 2, 100, 30));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 30));
+            tx.output(TemplateContract.ID, shard("e", 1, 2, 100, 30));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.ConsolidateBudget());
+            return tx.failsWith("Consolidation must not change the remaining allowance!");
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 10));
+            tx.input(TemplateContract.ID, shard("e", 1, 2, 100, 30));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 40));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.ConsolidateBudget());
+            return tx.failsWith("Every consumed shard must be reissued");
+        });
+    }
+
+    @Test
+    public void drawBudgetMovesTheCommandAmount() {
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 20));
+            tx.output(TemplateContract.ID, receipt("e", 30));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", 30));
+            return tx.verifies();
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 30));
+            tx.output(TemplateContract.ID, receipt("e", 30));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", 30));
+            return tx.failsWith("Budget shards must be drawn down by the command amount!");
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, -10));
+            tx.output(TemplateContract.ID, receipt("e", 60));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", 60));
+            return tx.failsWith("Cannot draw more than the budget shard holds!");
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.output(TemplateContract.ID, shard("e", 1, 2, 100, 20));
+            tx.output(TemplateContract.ID, receipt("e", 30));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", 30));
+            return tx.failsWith("Budget shard does not match!");
+        });
+    }
+
+    @Test
+    public void drawBudgetTakesTheAmountAcrossShardsOfOneEnvelope() {
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.input(TemplateContract.ID, shard("e", 1, 2, 100, 50));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 0));
+            tx.output(TemplateContract.ID, shard("e", 1, 2, 100, 30));
+            tx.output(TemplateContract.ID, receipt("e", 70));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", 70));
+            return tx.verifies();
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.input(TemplateContract.ID, shard("e", 1, 2, 100, 50));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 60));
+            tx.output(TemplateContract.ID, shard("e", 1, 2, 100, 10));
+            tx.output(TemplateContract.ID, receipt("e", 30));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", 30));
+            return tx.failsWith("A drawdown cannot add to a budget shard!");
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 1, 100, 50));
+            tx.input(TemplateContract.ID, shard("f", 0, 1, 100, 50));
+            tx.output(TemplateContract.ID, shard("e", 0, 1, 100, 0));
+            tx.output(TemplateContract.ID, shard("f", 0, 1, 100, 30));
+            tx.output(TemplateContract.ID, receipt("e", 70));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", 70));
+            return tx.failsWith("Shards must belong to the same envelope!");
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.input(TemplateContract.ID, shard("e", 1, 2, 100, 50));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 0));
+            tx.output(TemplateContract.ID, receipt("e", 50));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", 50));
+            return tx.failsWith("Every drawn shard must be reissued");
+        });
+    }
+
+    @Test
+    public void drawBudgetLeavesAReceiptOfTheAmount() {
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 20));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", 30));
+            return tx.failsWith("A drawdown must leave a receipt!");
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 20));
+            tx.output(TemplateContract.ID, receipt("e", 10));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", 30));
+            return tx.failsWith("Receipt does not match the drawdown!");
+        });
+    }
+
+    @Test
+    public void drawBudgetOnlyRefundsTheReceiptOfAPendingRequest() {
+        TransferState pending = request(100);
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 20));
+            tx.input(TemplateContract.ID, receipt("e", 30));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.reference(TemplateContract.ID, pending);
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", -30));
+            return tx.verifies();
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 20));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.reference(TemplateContract.ID, pending);
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", -30));
+            return tx.failsWith("A refund must consume the receipt of its drawdown!");
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 20));
+            tx.input(TemplateContract.ID, receipt("e", 10));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.reference(TemplateContract.ID, pending);
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", -30));
+            return tx.failsWith("Refund does not match its drawdown!");
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 20));
+            tx.input(TemplateContract.ID, receipt("e", 30));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", -30));
+            return tx.failsWith("A refund must reference the pending transfer request!");
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 20));
+            tx.input(TemplateContract.ID, receipt("e", 30));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 50));
+            tx.reference(TemplateContract.ID, approval(pending, 30));
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", -30));
+            return tx.failsWith("A refund must reference the pending transfer request!");
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, shard("e", 0, 2, 100, 90));
+            tx.input(TemplateContract.ID, receipt("e", 30));
+            tx.output(TemplateContract.ID, shard("e", 0, 2, 100, 120));
+            tx.reference(TemplateContract.ID, pending);
+            tx.command(issuer.getPublicKey(), new TemplateContract.Commands.DrawBudget("uid", -30));
+            return tx.failsWith("Cannot return more than the envelope holds!");
+        });
+    }
+
+    @Test
+    public void approvalCannotCarryABudgetShard() {
+        TransferState input = request(100);
+        TransferState output = approval(input, 80);
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, input);
+            tx.output(TemplateContract.ID, output);
+            tx.command(Arrays.asList(issuer.getPublicKey(), requester.getPublicKey()), TemplateContract.Commands.Approve.of(output));
+            return tx.verifies();
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, input);
+            tx.input(TemplateContract.ID, shard("e", 0, 1, 100, 100));
+            tx.output(TemplateContract.ID, output);
+            tx.output(TemplateContract.ID, shard("e", 0, 1, 100, 20));
+            tx.command(Arrays.asList(issuer.getPublicKey(), requester.getPublicKey()), TemplateContract.Commands.Approve.of(output));
+            return tx.failsWith("One Input Expected");
+        });
+    }
+
+    @Test
+    public void approvalCommandMustDescribeTheTransfer() {
+        TransferState input = request(100);
+        TransferState output = approval(input, 80);
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, input);
+            tx.output(TemplateContract.ID, output);
+            tx.command(Arrays.asList(issuer.getPublicKey(), requester.getPublicKey()), new TemplateContract.Commands.Approve());
+            return tx.failsWith("Approve command must describe the approved transfer!");
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, input);
+            tx.output(TemplateContract.ID, output);
+            tx.command(Arrays.asList(issuer.getPublicKey(), requester.getPublicKey()),
+                    new TemplateContract.Commands.Approve(output.getUid(), output.getAmount(), output.getIssuer(), output.getRequester(), null));
+            return tx.failsWith("Approve command must describe the approved transfer!");
+        });
+        transaction(ledgerServices, tx -> {
+            tx.input(TemplateContract.ID, input);
+            tx.output(TemplateContract.ID, output);
+            tx.command(Arrays.asList(issuer.getPublicKey(), requester.getPublicKey()), TemplateContract.Commands.Approve.of(approval(input, 90)));
+            return tx.failsWith("Approve command does not match the approved transfer!");
+        });
+    }
+}
@@ -0,0 +1,93 @@
+package com.template.merkle;
+
+import net.corda.core.crypto.SecureHash;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TransferTreeTests {
+    private static TransferTree build(List<String> uids) {
+        TransferTree tree = TransferTree.EMPTY_TREE;
+        for (String uid : uids) {
+            tree = tree.with(uid, SecureHash.sha256(uid));
+        }
+        return tree;
+    }
+
+    private static List<String> uids(int count) {
+        List<String> uids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            uids.add(SecureHash.sha256("transfer " + i).toString());
+        }
+        return uids;
+    }
+
+    @Test
+    public void rootDoesNotDependOnInsertionOrder() {
+        List<String> uids = uids(500);
+        TransferTree inOrder = build(uids);
+        Collections.shuffle(uids, new Random(42));
+        TransferTree shuffled = build(uids);
+        assertEquals(inOrder.getRoot(), shuffled.getRoot());
+        assertEquals(500, shuffled.size());
+    }
+
+    @Test
+    public void everyTransferHasAShortProof() {
+        List<String> uids = uids(1000);
+        TransferTree tree = build(uids);
+        for (String uid : uids) {
+            InclusionProof proof = tree.proof(uid);
+            assertTrue(proof.verify(tree.getRoot()));
+            assertEquals(SecureHash.sha256(uid), proof.getLeaf());
+            assertTrue(proof.getSteps().size() < 40);
+        }
+        assertNull(tree.proof("missing"));
+    }
+
+    @Test
+    public void tamperedProofFails() {
+        TransferTree tree = build(uids(100));
+        InclusionProof proof = tree.proof(uids(100).get(7));
+        InclusionProof forged = new InclusionProof(proof.getUid(), SecureHash.sha256("forged"), proof.getLeft(), proof.getRight(), proof.getSteps());
+        assertFalse(forged.verify(tree.getRoot()));
+    }
+
+    @Test
+    public void addingLeavesOlderTreesIntact() {
+        List<String> uids = uids(200);
+        TransferTree published = build(uids.subList(0, 100));
+        TransferTree later = published;
+        for (String uid : uids.subList(100, 200)) {
+            later = later.with(uid, SecureHash.sha256(uid));
+        }
+        assertEquals(build(uids.subList(0, 100)).getRoot(), published.getRoot());
+        assertTrue(published.proof(uids.get(3)).verify(published.getRoot()));
+        assertFalse(published.contains(uids.get(150)));
+        assertEquals(build(uids).getRoot(), later.getRoot());
+    }
+
+    @Test
+    public void publishedTreeIsRebuiltFromItsUidsAndTheLaterLeaves() {
+        List<String> uids = uids(200);
+        TransferTree published = build(uids.subList(0, 120));
+        TransferTree later = build(uids);
+
+        List<String> stored = published.uids();
+        assertEquals(120, stored.size());
+        List<String> sorted = new ArrayList<>(stored);
+        Collections.sort(sorted);
+        assertEquals(sorted, stored);
+        TransferTree rebuilt = TransferTree.EMPTY_TREE;
+        for (String uid : stored) {
+            rebuilt = rebuilt.with(uid, later.leaf(uid));
+        }
+        assertEquals(published.getRoot(), rebuilt.getRoot());
+        assertNull(published.leaf(uids.get(150)));
+    }
+}
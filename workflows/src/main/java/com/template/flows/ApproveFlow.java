@@ -2,8 +2,11 @@ package com.template.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
 import com.template.contracts.TemplateContract;
+import com.template.states.BudgetState;
+import com.template.states.DrawdownState;
 import com.template.states.TransferState;
 import net.corda.core.contracts.StateAndRef;
+import net.corda.core.crypto.SecureHash;
 import net.corda.core.flows.*;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.utilities.ProgressTracker;
@@ -16,7 +19,11 @@ import java.security.PublicKey;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 // ******************
@@ -53,15 +60,13 @@ public class ApproveFlow extends FlowLogic<SignedTransaction> {
         Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
         // We create the transaction components.
 
-        // Query the vault to fetch a list of all AuctionState state, and filter the results based on the auctionName
-        // to fetch the desired AuctionState state from the vault. This filtered state would be used as input to the
-        // transaction.
-        List<StateAndRef<TransferState>> transferStateAndRefs = getServiceHub().getVaultService()
-                .queryBy(TransferState.class).getStates();
-        StateAndRef<TransferState> inputStateAndRef = transferStateAndRefs.stream().filter(transferStateAndRef -> {
-            TransferState transferState = transferStateAndRef.getState().getData();
-            return transferState.getUid().startsWith(UID) && !transferState.getApprove() && transferState.getIssuer().equals(getOurIdentity());
-        }).findAny().orElseThrow(() -> new IllegalArgumentException("Transfer request Not Found"));
+        // Select the pending request matching the UID prefix and reserve it with a soft lock, so that a concurrent
+        // ApproveFlow or DeclineFlow on this node cannot pick the same input and fail at the notary after signing.
+        Party us = getOurIdentity();
+        String uid = UID;
+        StateAndRef<TransferState> inputStateAndRef = StateSelector.selectAndReserve(this, TransferState.class,
+                transferState -> transferState.getUid().startsWith(uid) && !transferState.getApprove() && transferState.getIssuer().equals(us), false);
+        if (inputStateAndRef == null) throw new IllegalArgumentException("Transfer request Not Found");
 
 
         TransferState input = inputStateAndRef.getState().getData();
@@ -69,10 +74,10 @@ public class ApproveFlow extends FlowLogic<SignedTransaction> {
         List<PublicKey> signers = new ArrayList<PublicKey>();
         signers.add(getOurIdentity().getOwningKey());
         signers.add(input.getRequester().getOwningKey());
-        // Create Command from CommandData Bid and list of required signers
-        Command command = new Command<>(new TemplateContract.Commands.Approve(), signers);
         //Create output state
         TransferState output = new TransferState(getOurIdentity(), input.getRequester(), input.getAllNodes(), Amount, input.getRequestDate(), Instant.MAX, true, input.getUid(), input.getTitle(), input.getDescription());
+        // Create Command from CommandData Bid and list of required signers
+        Command command = new Command<>(TemplateContract.Commands.Approve.of(output), signers);
         // We create a transaction builder and add the components.
         TransactionBuilder txBuilder = new TransactionBuilder(notary)
                 .addOutputState(output)
@@ -80,6 +85,25 @@ public class ApproveFlow extends FlowLogic<SignedTransaction> {
                 .addCommand(command);
         // Verify transaction
         txBuilder.verify(getServiceHub());
+        // Draw the approved amount down from our budget envelope, if we have one, before anyone signs. The drawdown is
+        // a transaction of its own, seen by us alone, so that the receivers of the approval never have to resolve the
+        // history of the shards, which is made of our other approvals.
+        List<StateAndRef<BudgetState>> shardStateAndRefs = selectBudgetShards();
+        StateAndRef<DrawdownState> receipt = shardStateAndRefs.isEmpty() ? null : drawBudget(notary, shardStateAndRefs, input.getUid(), Amount);
+        SecureHash approvalId = txBuilder.toWireTransaction(getServiceHub()).getId();
+        try {
+            return approve(notary, txBuilder, input, output);
+        } catch (FlowException e) {
+            // Return the drawdown unless the approval went through after all, e.g. before a receiver failed.
+            if (receipt != null && getServiceHub().getValidatedTransactions().getTransaction(approvalId) == null) {
+                refundBudget(notary, receipt, inputStateAndRef);
+            }
+            throw e;
+        }
+    }
+
+    @Suspendable
+    private SignedTransaction approve(Party notary, TransactionBuilder txBuilder, TransferState input, TransferState output) throws FlowException {
         // Self Signing the transaction.
         SignedTransaction signedTx = getServiceHub().signInitialTransaction(txBuilder);
         FlowSession requesterSes = initiateFlow(input.getRequester());
@@ -92,14 +116,127 @@ public class ApproveFlow extends FlowLogic<SignedTransaction> {
                 .map(nodeInfo -> nodeInfo.getLegalIdentities().get(0))
                 .collect(Collectors.toList());
         parties.remove(notary);
+        // With filtered disclosure, nodes outside the transfer only get a tear-off of the approval once notarised.
+        // Observers hold the request in full, so they get the approval in full too, or the request would stay
+        // unconsumed in their vault.
+        boolean filtered = Utils.filteredDisclosure(getServiceHub());
+        List<Party> observers = Utils.observers(getServiceHub());
+        List<AbstractParty> disclosees = new ArrayList<>();
         for(AbstractParty party: parties){
             if(!party.equals(getOurIdentity())) {
+                if (filtered && !output.getParticipants().contains(party) && !observers.contains(party)) {
+                    disclosees.add(party);
+                    continue;
+                }
                 FlowSession session = initiateFlow(party);
                 session.send(false);
                 allSessions.add(session);
             }
         }
 
-        return subFlow(new FinalityFlow(signedTx, allSessions));
+        SignedTransaction finalTx;
+        try {
+            finalTx = subFlow(new FinalityFlow(signedTx, allSessions));
+        } catch (NotaryException e) {
+            getServiceHub().cordaService(FlowMetrics.class).increment(FlowMetrics.NOTARY_CONFLICTS);
+            throw e;
+        }
+        if (!disclosees.isEmpty()) subFlow(new DiscloseApprovalFlow(finalTx, disclosees));
+        return finalTx;
+    }
+
+    // Finalizes, with us alone, the move of AMOUNT out of SHARDSTATEANDREFS, taken from each in turn, for the approval
+    // of transfer UID, and returns the receipt of the drawdown.
+    @Suspendable
+    private StateAndRef<DrawdownState> drawBudget(Party notary, List<StateAndRef<BudgetState>> shardStateAndRefs, String uid, long amount) throws FlowException {
+        Command command = new Command<>(new TemplateContract.Commands.DrawBudget(uid, amount), getOurIdentity().getOwningKey());
+        TransactionBuilder txBuilder = new TransactionBuilder(notary).addCommand(command);
+        long left = amount;
+        for (StateAndRef<BudgetState> shardStateAndRef : shardStateAndRefs) {
+            BudgetState shard = shardStateAndRef.getState().getData();
+            long drawn = Math.min(left, shard.getRemaining());
+            left -= drawn;
+            txBuilder.addInputState(shardStateAndRef);
+            txBuilder.addOutputState(shard.withRemaining(shard.getRemaining() - drawn), TemplateContract.ID);
+        }
+        String envelopeId = shardStateAndRefs.get(0).getState().getData().getEnvelopeId();
+        txBuilder.addOutputState(new DrawdownState(getOurIdentity(), envelopeId, uid, amount), TemplateContract.ID);
+        txBuilder.verify(getServiceHub());
+        SignedTransaction finalTx = subFlow(new FinalityFlow(getServiceHub().signInitialTransaction(txBuilder), Collections.emptyList()));
+        return finalTx.getTx().outRef(shardStateAndRefs.size());
+    }
+
+    // Returns the amount of RECEIPT to a shard of its envelope with room for it. The refund refers to the request
+    // REQUESTSTATEANDREF, so that the notary rejects it if the approval went through after all.
+    @Suspendable
+    private void refundBudget(Party notary, StateAndRef<DrawdownState> receipt, StateAndRef<TransferState> requestStateAndRef) throws FlowException {
+        Party us = getOurIdentity();
+        DrawdownState drawdown = receipt.getState().getData();
+        String envelopeId = drawdown.getEnvelopeId();
+        long amount = drawdown.getAmount();
+        StateAndRef<BudgetState> shardStateAndRef = StateSelector.selectAndReserve(this, BudgetState.class,
+                shard -> shard.getIssuer().equals(us) && shard.getEnvelopeId().equals(envelopeId) && shard.getTotal() - shard.getRemaining() >= amount, true);
+        if (shardStateAndRef == null) {
+            getLogger().warn("Could not return " + amount + " drawn for transfer " + drawdown.getUid() + ", envelope " + envelopeId + " is gone.");
+            return;
+        }
+        BudgetState shard = shardStateAndRef.getState().getData();
+        Command command = new Command<>(new TemplateContract.Commands.DrawBudget(drawdown.getUid(), -amount), us.getOwningKey());
+        TransactionBuilder txBuilder = new TransactionBuilder(notary)
+                .addInputState(shardStateAndRef)
+                .addInputState(receipt)
+                .addReferenceState(requestStateAndRef.referenced())
+                .addOutputState(shard.withRemaining(shard.getRemaining() + amount), TemplateContract.ID)
+                .addCommand(command);
+        txBuilder.verify(getServiceHub());
+        try {
+            subFlow(new FinalityFlow(getServiceHub().signInitialTransaction(txBuilder), Collections.emptyList()));
+        } catch (NotaryException e) {
+            // The request was consumed meanwhile, so the amount stays drawn rather than hide why the approval failed.
+            getLogger().warn("Could not return " + amount + " drawn for transfer " + drawdown.getUid() + ", its request is no longer pending.", e);
+        }
+    }
+
+    /**
+     * Returns shards of one of our budget envelopes holding at least Amount between them, soft-locked for this flow,
+     * or no shard if we have no envelope. A single shard holding the whole amount is preferred, picked at random among
+     * the unlocked ones to spread concurrent approvals across the envelope; failing that, shards are added until they
+     * hold the amount.
+     */
+    @Suspendable
+    private List<StateAndRef<BudgetState>> selectBudgetShards() throws FlowException {
+        List<StateAndRef<BudgetState>> shards = Utils.budgetShards(getServiceHub(), getOurIdentity());
+        if (shards.isEmpty()) return Collections.emptyList();
+        Party us = getOurIdentity();
+        long amount = Amount;
+        if (shards.stream().anyMatch(shardStateAndRef -> shardStateAndRef.getState().getData().getRemaining() >= amount)) {
+            StateAndRef<BudgetState> shardStateAndRef = StateSelector.selectAndReserve(this, BudgetState.class,
+                    shard -> shard.getIssuer().equals(us) && shard.getRemaining() >= amount, true);
+            if (shardStateAndRef != null) return Collections.singletonList(shardStateAndRef);
+        }
+        // No shard holds the amount alone: draw from the envelope holding the most, if that is enough.
+        Map<String, Long> remainingByEnvelope = new HashMap<>();
+        for (StateAndRef<BudgetState> shardStateAndRef : shards) {
+            BudgetState shard = shardStateAndRef.getState().getData();
+            remainingByEnvelope.merge(shard.getEnvelopeId(), shard.getRemaining(), Long::sum);
+        }
+        Map.Entry<String, Long> fullest = Collections.max(remainingByEnvelope.entrySet(), Map.Entry.comparingByValue());
+        if (fullest.getValue() < amount) throw new FlowException("Approval exceeds the remaining budget envelope!");
+        String envelopeId = fullest.getKey();
+        List<StateAndRef<BudgetState>> selected = new ArrayList<>();
+        Set<Integer> taken = new HashSet<>();
+        long held = 0;
+        while (held < amount) {
+            Set<Integer> excluded = new HashSet<>(taken);
+            StateAndRef<BudgetState> shardStateAndRef = StateSelector.selectAndReserve(this, BudgetState.class,
+                    shard -> shard.getIssuer().equals(us) && shard.getEnvelopeId().equals(envelopeId)
+                            && shard.getRemaining() > 0 && !excluded.contains(shard.getShardIndex()), true);
+            // Concurrent approvals drew the rest meanwhile.
+            if (shardStateAndRef == null) throw new FlowException("Approval exceeds the remaining budget envelope!");
+            selected.add(shardStateAndRef);
+            taken.add(shardStateAndRef.getState().getData().getShardIndex());
+            held += shardStateAndRef.getState().getData().getRemaining();
+        }
+        return selected;
     }
-}
\ No newline at end of file
+}
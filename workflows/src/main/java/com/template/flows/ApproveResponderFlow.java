@@ -35,6 +35,6 @@ public class ApproveResponderFlow extends FlowLogic<SignedTransaction> {
                 }
             });
         }
-        return subFlow(new ReceiveFinalityFlow(otherPartySession));
+        return subFlow(new ReceiveFinalityFlow(otherPartySession, null, Utils.statesToRecord(getServiceHub(), getOurIdentity())));
     }
 }
@@ -0,0 +1,67 @@
+package com.template.flows;
+
+import com.template.schemas.TransferSchemaV1;
+import com.template.states.TransferState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.flows.StartableByService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.schemas.PersistentStateRef;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Writes the TransferSchemaV1 row of every transfer in the vault that has none, and returns the number written.
+ * The vault only maps the states it records once the schema exists, so transfers recorded before it are missing
+ * from the transfer_states table, and from every query filtering on its columns, until this has run. Started on
+ * every node start by TransferSchemaBackfill, it does nothing once every transfer has its row.
+ */
+@StartableByRPC
+@StartableByService
+public class BackfillTransfersFlow extends FlowLogic<Long> {
+    /** Number of transfers read from the vault at a time. */
+    static final int PAGE_SIZE = 200;
+
+    @Override
+    public Long call() throws FlowException {
+        QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.ALL);
+        long transfers = getServiceHub().getVaultService().queryBy(TransferState.class, criteria,
+                new PageSpecification(DEFAULT_PAGE_NUM, 1)).getTotalStatesAvailable();
+        if (mappedCount() >= transfers) return 0L;
+
+        AtomicLong written = new AtomicLong();
+        for (int page = DEFAULT_PAGE_NUM; ; page++) {
+            Vault.Page<TransferState> results = getServiceHub().getVaultService().queryBy(TransferState.class, criteria,
+                    new PageSpecification(page, PAGE_SIZE), Utils.BY_RECORDED_TIME);
+            getServiceHub().withEntityManager(entityManager -> {
+                for (StateAndRef<TransferState> stateAndRef : results.getStates()) {
+                    PersistentStateRef ref = new PersistentStateRef(stateAndRef.getRef());
+                    if (entityManager.find(TransferSchemaV1.PersistentTransfer.class, ref) != null) continue;
+                    TransferSchemaV1.PersistentTransfer row = (TransferSchemaV1.PersistentTransfer)
+                            stateAndRef.getState().getData().generateMappedObject(new TransferSchemaV1());
+                    row.setStateRef(ref);
+                    entityManager.persist(row);
+                    written.incrementAndGet();
+                }
+            });
+            if ((long) page * PAGE_SIZE >= results.getTotalStatesAvailable()) break;
+        }
+        getLogger().info("Wrote the transfer_states rows of " + written.get() + " transfers recorded before the schema");
+        return written.get();
+    }
+
+    private long mappedCount() {
+        AtomicLong count = new AtomicLong();
+        getServiceHub().withEntityManager(entityManager -> {
+            count.set(entityManager.createQuery("SELECT COUNT(t) FROM " + TransferSchemaV1.PersistentTransfer.class.getName() + " t", Long.class)
+                    .getSingleResult());
+        });
+        return count.get();
+    }
+}
@@ -0,0 +1,93 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.TemplateContract;
+import com.template.states.BudgetState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * Rebalances the shards of our budget envelope so that the remaining allowance is spread evenly again. Approvals
+ * larger than any one shard draw from several shards, holding all of them for their duration, so this is run in quiet
+ * periods once shards drift apart. Shards held by approvals in flight are left out of the rebalancing.
+ */
+@InitiatingFlow
+@StartableByRPC
+public class ConsolidateBudgetFlow extends FlowLogic<SignedTransaction> {
+
+    /**
+     * The progress tracker provides checkpoints indicating the progress of the flow to observers.
+     */
+    private final ProgressTracker progressTracker = new ProgressTracker();
+
+    public ConsolidateBudgetFlow() {
+    }
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+    /**
+     * The flow logic is encapsulated within the call() method.
+     */
+    @Suspendable
+    @Override
+    public SignedTransaction call() throws FlowException {
+        List<StateAndRef<BudgetState>> shards = Utils.budgetShards(getServiceHub(), getOurIdentity());
+        if (shards.isEmpty()) throw new FlowException("Budget envelope Not Found");
+        // Rebalance the envelope approvals draw from when none holds their amount alone: the one holding the most.
+        Map<String, Long> remainingByEnvelope = new HashMap<>();
+        for (StateAndRef<BudgetState> shardStateAndRef : shards) {
+            BudgetState shard = shardStateAndRef.getState().getData();
+            remainingByEnvelope.merge(shard.getEnvelopeId(), shard.getRemaining(), Long::sum);
+        }
+        String envelopeId = Collections.max(remainingByEnvelope.entrySet(), Map.Entry.comparingByValue()).getKey();
+
+        // Reserve the shards no approval is drawing from, so that neither this flow nor the approvals fail at the
+        // notary, and leave the others as they are.
+        Party us = getOurIdentity();
+        List<StateAndRef<BudgetState>> shardStateAndRefs = StateSelector.reserveUnlocked(this, BudgetState.class,
+                shard -> shard.getIssuer().equals(us) && shard.getEnvelopeId().equals(envelopeId));
+        if (shardStateAndRefs.isEmpty()) throw new FlowException("Every budget shard is in use by a concurrent flow, please retry later.");
+
+        // We retrieve the notary identity from the network map.
+        Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+
+        Command command = new Command<>(new TemplateContract.Commands.ConsolidateBudget(), getOurIdentity().getOwningKey());
+        TransactionBuilder txBuilder = new TransactionBuilder(notary).addCommand(command);
+
+        long remaining = 0;
+        for (StateAndRef<BudgetState> shardStateAndRef : shardStateAndRefs) {
+            remaining += shardStateAndRef.getState().getData().getRemaining();
+            txBuilder.addInputState(shardStateAndRef);
+        }
+        // Reissue every reserved shard under its own index, spreading the remainder over the first shards.
+        int count = shardStateAndRefs.size();
+        for (int i = 0; i < count; i++) {
+            BudgetState shard = shardStateAndRefs.get(i).getState().getData();
+            txBuilder.addOutputState(shard.withRemaining(remaining / count + (i < remaining % count ? 1 : 0)), TemplateContract.ID);
+        }
+
+        // Verify transaction
+        txBuilder.verify(getServiceHub());
+
+        // Self Signing the transaction.
+        SignedTransaction signedTx = getServiceHub().signInitialTransaction(txBuilder);
+
+        return subFlow(new FinalityFlow(signedTx, Collections.emptyList()));
+    }
+}
@@ -0,0 +1,82 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.TemplateContract;
+import com.template.states.BudgetState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * Creates the budget envelope that caps our approvals. The allowance is split across SHARDS states so that
+ * concurrent ApproveFlows draw down different shards instead of contending on one. A new envelope can only be created
+ * once the previous one is exhausted.
+ */
+@InitiatingFlow
+@StartableByRPC
+public class CreateBudgetFlow extends FlowLogic<SignedTransaction> {
+    private final long total;
+    private final int shards;
+
+    /**
+     * The progress tracker provides checkpoints indicating the progress of the flow to observers.
+     */
+    private final ProgressTracker progressTracker = new ProgressTracker();
+
+    public CreateBudgetFlow(long total, int shards) {
+        this.total = total;
+        this.shards = shards;
+    }
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+    /**
+     * The flow logic is encapsulated within the call() method.
+     */
+    @Suspendable
+    @Override
+    public SignedTransaction call() throws FlowException {
+        if (total <= 0 || shards <= 0 || shards > total) throw new FlowException("Invalid budget envelope!");
+        // Exhausted shards of earlier envelopes are retired by this transaction; any allowance left must be used first.
+        List<StateAndRef<BudgetState>> previous = Utils.budgetShards(getServiceHub(), getOurIdentity());
+        if (previous.stream().anyMatch(shardStateAndRef -> shardStateAndRef.getState().getData().getRemaining() > 0)) {
+            throw new FlowException("A budget envelope already exists, consolidate or exhaust it first.");
+        }
+
+        // We retrieve the notary identity from the network map.
+        Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+
+        String envelopeId = Utils.sha1(getOurIdentity().getOwningKey().toString(), Long.toString(total), Integer.toString(shards), Instant.now().toString());
+        Command command = new Command<>(new TemplateContract.Commands.CreateBudget(), getOurIdentity().getOwningKey());
+        TransactionBuilder txBuilder = new TransactionBuilder(notary).addCommand(command);
+        previous.forEach(txBuilder::addInputState);
+        // Split the allowance evenly, spreading the remainder over the first shards.
+        for (int i = 0; i < shards; i++) {
+            long allowance = total / shards + (i < total % shards ? 1 : 0);
+            txBuilder.addOutputState(new BudgetState(getOurIdentity(), envelopeId, i, shards, total, allowance), TemplateContract.ID);
+        }
+
+        // Verify transaction
+        txBuilder.verify(getServiceHub());
+
+        // Self Signing the transaction.
+        SignedTransaction signedTx = getServiceHub().signInitialTransaction(txBuilder);
+
+        // The envelope is private to the issuer, so there is no one else to finalize with.
+        return subFlow(new FinalityFlow(signedTx, Collections.emptyList()));
+    }
+}
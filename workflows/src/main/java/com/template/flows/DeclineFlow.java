@@ -48,16 +48,13 @@ public class DeclineFlow extends FlowLogic<SignedTransaction> {
 
         // We create the transaction components.
 
-        // Query the vault to fetch a list of all AuctionState state, and filter the results based on the auctionName
-        // to fetch the desired AuctionState state from the vault. This filtered state would be used as input to the
-        // transaction.
-        List<StateAndRef<TransferState>> transferStateAndRefs = getServiceHub().getVaultService()
-                .queryBy(TransferState.class).getStates();
-
-        StateAndRef<TransferState> inputStateAndRef = transferStateAndRefs.stream().filter(transferStateAndRef -> {
-            TransferState transferState = transferStateAndRef.getState().getData();
-            return transferState.getUid().startsWith(UID) && !transferState.getApprove() && transferState.getIssuer().equals(getOurIdentity());
-        }).findAny().orElseThrow(() -> new IllegalArgumentException("Transfer request Not Found"));
+        // Select the pending request matching the UID prefix and reserve it with a soft lock, so that a concurrent
+        // ApproveFlow or DeclineFlow on this node cannot pick the same input and fail at the notary after signing.
+        Party us = getOurIdentity();
+        String uid = UID;
+        StateAndRef<TransferState> inputStateAndRef = StateSelector.selectAndReserve(this, TransferState.class,
+                transferState -> transferState.getUid().startsWith(uid) && !transferState.getApprove() && transferState.getIssuer().equals(us), false);
+        if (inputStateAndRef == null) throw new IllegalArgumentException("Transfer request Not Found");
 
         TransferState input = inputStateAndRef.getState().getData();
 
@@ -85,7 +82,15 @@ public class DeclineFlow extends FlowLogic<SignedTransaction> {
         // Initiate Sessions with all participants to Finalize flow
         List<FlowSession> allSessions = new ArrayList<FlowSession>();
         allSessions.add(requesterSes);
-
-        return subFlow(new FinalityFlow(signedTx, allSessions));
+        for (Party observer : Utils.observers(getServiceHub())) {
+            allSessions.add(initiateFlow(observer));
+        }
+
+        try {
+            return subFlow(new FinalityFlow(signedTx, allSessions));
+        } catch (NotaryException e) {
+            getServiceHub().cordaService(FlowMetrics.class).increment(FlowMetrics.NOTARY_CONFLICTS);
+            throw e;
+        }
     }
 }
\ No newline at end of file
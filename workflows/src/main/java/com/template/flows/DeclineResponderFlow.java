@@ -20,6 +20,6 @@ public class DeclineResponderFlow extends FlowLogic<SignedTransaction> {
     @Override
     public SignedTransaction call() throws FlowException {
         // Finalize the Flow and save new state
-        return subFlow(new ReceiveFinalityFlow(otherPartySession));
+        return subFlow(new ReceiveFinalityFlow(otherPartySession, null, Utils.statesToRecord(getServiceHub(), getOurIdentity())));
     }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.TemplateContract;
+import net.corda.core.contracts.Command;
+import net.corda.core.crypto.TransactionSignature;
+import net.corda.core.flows.*;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.serialization.CordaSerializable;
+import net.corda.core.transactions.FilteredTransaction;
+import net.corda.core.transactions.SignedTransaction;
+
+import java.util.List;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * Discloses a notarised approval to nodes outside the transfer as a tear-off of the transaction that reveals only its
+ * Approve command, which repeats the UID, amount, parties and date of the transfer, and its notary. Together with the
+ * signatures this lets them check the approval without receiving, resolving or storing the transaction itself.
+ */
+@InitiatingFlow
+public class DiscloseApprovalFlow extends FlowLogic<Void> {
+    private final SignedTransaction approval;
+    private final List<AbstractParty> disclosees;
+
+    /** What a disclosee receives: the tear-off and the signatures over the id it proves. */
+    @CordaSerializable
+    public static class Disclosure {
+        private final FilteredTransaction filteredTransaction;
+        private final List<TransactionSignature> sigs;
+
+        public Disclosure(FilteredTransaction filteredTransaction, List<TransactionSignature> sigs) {
+            this.filteredTransaction = filteredTransaction;
+            this.sigs = sigs;
+        }
+
+        public FilteredTransaction getFilteredTransaction() {
+            return filteredTransaction;
+        }
+
+        public List<TransactionSignature> getSigs() {
+            return sigs;
+        }
+    }
+
+    public DiscloseApprovalFlow(SignedTransaction approval, List<AbstractParty> disclosees) {
+        this.approval = approval;
+        this.disclosees = disclosees;
+    }
+
+    /**
+     * The flow logic is encapsulated within the call() method.
+     */
+    @Suspendable
+    @Override
+    public Void call() throws FlowException {
+        Disclosure disclosure = new Disclosure(tearOff(approval), approval.getSigs());
+        for (AbstractParty disclosee : disclosees) {
+            initiateFlow(disclosee).send(disclosure);
+        }
+        return null;
+    }
+
+    // Kept out of call() so that the filtering lambda never has to be checkpointed.
+    private static FilteredTransaction tearOff(SignedTransaction approval) {
+        Party notary = approval.getNotary();
+        return approval.buildFilteredTransaction(element ->
+                (element instanceof Command && ((Command<?>) element).getValue() instanceof TemplateContract.Commands.Approve)
+                        || (element instanceof Party && element.equals(notary)));
+    }
+}
@@ -0,0 +1,81 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.TemplateContract;
+import net.corda.core.contracts.Command;
+import net.corda.core.crypto.TransactionSignature;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.FilteredTransaction;
+import net.corda.core.transactions.FilteredTransactionVerificationException;
+
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// ******************
+// * Responder flow *
+// ******************
+@InitiatedBy(DiscloseApprovalFlow.class)
+public class DiscloseApprovalResponderFlow extends FlowLogic<Void> {
+    private final FlowSession otherPartySession;
+
+    public DiscloseApprovalResponderFlow(FlowSession otherPartySession) {
+        this.otherPartySession = otherPartySession;
+    }
+
+    @Suspendable
+    @Override
+    public Void call() throws FlowException {
+        DiscloseApprovalFlow.Disclosure disclosure = otherPartySession.receive(DiscloseApprovalFlow.Disclosure.class).unwrap(it -> it);
+        TemplateContract.Commands.Approve approve = check(disclosure);
+        getServiceHub().cordaService(DisclosedApprovals.class).record(disclosure.getFilteredTransaction().getId(), approve);
+        return null;
+    }
+
+    /**
+     * Returns the approval proven by DISCLOSURE: a tear-off of a transaction showing nothing but one Approve command
+     * and a known notary, signed by the issuer who sent it, the requester and that notary.
+     */
+    private TemplateContract.Commands.Approve check(DiscloseApprovalFlow.Disclosure disclosure) throws FlowException {
+        FilteredTransaction tearOff = disclosure.getFilteredTransaction();
+        try {
+            tearOff.verify();
+        } catch (FilteredTransactionVerificationException e) {
+            throw new FlowException("Disclosed approval does not match its transaction id!", e);
+        }
+        if (!tearOff.checkWithFun(element -> element instanceof Command || element instanceof Party)) {
+            throw new FlowException("Disclosed approval reveals more than expected!");
+        }
+        List<Command<?>> commands = tearOff.getCommands();
+        if (commands.size() != 1 || !(commands.get(0).getValue() instanceof TemplateContract.Commands.Approve)) {
+            throw new FlowException("Disclosed approval must show one Approve command!");
+        }
+        TemplateContract.Commands.Approve approve = (TemplateContract.Commands.Approve) commands.get(0).getValue();
+        if (approve.getUid() == null) throw new FlowException("Disclosed approval does not describe its transfer!");
+        Party notary = tearOff.getNotary();
+        if (notary == null || !getServiceHub().getNetworkMapCache().isNotary(notary)) throw new FlowException("Disclosed approval must show a known notary!");
+        if (!otherPartySession.getCounterparty().getOwningKey().equals(approve.getIssuer().getOwningKey())) {
+            throw new FlowException("Only the issuer discloses its approvals!");
+        }
+        List<PublicKey> commandSigners = commands.get(0).getSigners();
+        if (!commandSigners.contains(approve.getIssuer().getOwningKey()) || !commandSigners.contains(approve.getRequester().getOwningKey())) {
+            throw new FlowException("Disclosed approval must be signed by the issuer and the requester!");
+        }
+
+        Set<PublicKey> signed = new HashSet<>();
+        for (TransactionSignature sig : disclosure.getSigs()) {
+            try {
+                if (sig.isValid(tearOff.getId())) signed.add(sig.getBy());
+            } catch (GeneralSecurityException e) {
+                throw new FlowException("Invalid signature on disclosed approval!", e);
+            }
+        }
+        if (!signed.contains(approve.getIssuer().getOwningKey()) || !signed.contains(approve.getRequester().getOwningKey()) || !signed.contains(notary.getOwningKey())) {
+            throw new FlowException("Disclosed approval is missing signatures!");
+        }
+        return approve;
+    }
+}
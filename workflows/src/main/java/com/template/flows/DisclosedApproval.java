@@ -0,0 +1,52 @@
+package com.template.flows;
+
+import net.corda.core.serialization.CordaSerializable;
+
+import java.time.Instant;
+
+/**
+ * An approval disclosed to this node as a tear-off, as kept by DisclosedApprovals.
+ */
+@CordaSerializable
+public class DisclosedApproval {
+    private final String txId;
+    private final String uid;
+    private final long amount;
+    private final String issuer;
+    private final String requester;
+    private final Instant requestDate;
+
+    public DisclosedApproval(String txId, String uid, long amount, String issuer, String requester, Instant requestDate) {
+        this.txId = txId;
+        this.uid = uid;
+        this.amount = amount;
+        this.issuer = issuer;
+        this.requester = requester;
+        this.requestDate = requestDate;
+    }
+
+    /** Id of the approving transaction */
+    public String getTxId() {
+        return txId;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public String getRequester() {
+        return requester;
+    }
+
+    public Instant getRequestDate() {
+        return requestDate;
+    }
+}
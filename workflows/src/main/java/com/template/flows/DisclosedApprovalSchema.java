@@ -0,0 +1,7 @@
+package com.template.flows;
+
+/**
+ * The family of schemas for the approvals disclosed to this node as tear-offs.
+ */
+public class DisclosedApprovalSchema {
+}
@@ -0,0 +1,82 @@
+package com.template.flows;
+
+import net.corda.core.schemas.MappedSchema;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.Collections;
+
+/**
+ * Version 1 of the disclosed approval schema: one row per approval disclosed to this node, as they have no state in
+ * the vault.
+ */
+public class DisclosedApprovalSchemaV1 extends MappedSchema {
+    public DisclosedApprovalSchemaV1() {
+        super(DisclosedApprovalSchema.class, 1, Collections.singletonList(PersistentDisclosedApproval.class));
+    }
+
+    @Override
+    public String getMigrationResource() {
+        return "disclosed-approval.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "disclosed_approvals", indexes = {@Index(name = "disclosed_approvals_request_date_idx", columnList = "request_date")})
+    public static class PersistentDisclosedApproval {
+        @Id
+        @Column(name = "tx_id", nullable = false)
+        private final String txId;
+        @Column(name = "uid", nullable = false)
+        private final String uid;
+        @Column(name = "amount", nullable = false)
+        private final long amount;
+        @Column(name = "issuer", nullable = false)
+        private final String issuer;
+        @Column(name = "requester", nullable = false)
+        private final String requester;
+        @Column(name = "request_date", nullable = false)
+        private final Instant requestDate;
+
+        public PersistentDisclosedApproval(String txId, String uid, long amount, String issuer, String requester, Instant requestDate) {
+            this.txId = txId;
+            this.uid = uid;
+            this.amount = amount;
+            this.issuer = issuer;
+            this.requester = requester;
+            this.requestDate = requestDate;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentDisclosedApproval() {
+            this(null, null, 0, null, null, null);
+        }
+
+        public String getTxId() {
+            return txId;
+        }
+
+        public String getUid() {
+            return uid;
+        }
+
+        public long getAmount() {
+            return amount;
+        }
+
+        public String getIssuer() {
+            return issuer;
+        }
+
+        public String getRequester() {
+            return requester;
+        }
+
+        public Instant getRequestDate() {
+            return requestDate;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.template.flows;
+
+import com.template.contracts.TemplateContract;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the approvals disclosed to this node as tear-offs, one row each in the node database, as they have no state
+ * in the vault. The rows are the entities of DisclosedApprovalSchemaV1. Must be used from within a flow, whose
+ * database transaction it joins.
+ */
+@CordaService
+public class DisclosedApprovals extends SingletonSerializeAsToken {
+    private final AppServiceHub serviceHub;
+
+    public DisclosedApprovals(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+    }
+
+    /** Records APPROVE, disclosed by transaction TXID. Recording the same transaction again does nothing. */
+    public void record(SecureHash txId, TemplateContract.Commands.Approve approve) {
+        DisclosedApprovalSchemaV1.PersistentDisclosedApproval row = new DisclosedApprovalSchemaV1.PersistentDisclosedApproval(
+                txId.toString(), approve.getUid(), approve.getAmount(), nameOf(approve.getIssuer()), nameOf(approve.getRequester()),
+                approve.getRequestDate());
+        serviceHub.withEntityManager(entityManager -> {
+            if (entityManager.find(DisclosedApprovalSchemaV1.PersistentDisclosedApproval.class, row.getTxId()) == null) entityManager.persist(row);
+        });
+    }
+
+    /** Returns up to LIMIT disclosed approvals from OFFSET on, by request date. */
+    public List<DisclosedApproval> list(int offset, int limit) {
+        List<DisclosedApproval> approvals = new ArrayList<>();
+        serviceHub.withEntityManager(entityManager -> {
+            entityManager.createQuery("SELECT a FROM " + DisclosedApprovalSchemaV1.PersistentDisclosedApproval.class.getName()
+                    + " a ORDER BY a.requestDate, a.txId", DisclosedApprovalSchemaV1.PersistentDisclosedApproval.class)
+                    .setFirstResult(offset)
+                    .setMaxResults(limit)
+                    .getResultList()
+                    .forEach(row -> approvals.add(new DisclosedApproval(row.getTxId(), row.getUid(), row.getAmount(),
+                            row.getIssuer(), row.getRequester(), row.getRequestDate())));
+        });
+        return approvals;
+    }
+
+    private String nameOf(AbstractParty party) {
+        Party wellKnown = serviceHub.getIdentityService().wellKnownPartyFromAnonymous(party);
+        return wellKnown != null ? wellKnown.getName().toString() : party.getOwningKey().toString();
+    }
+}
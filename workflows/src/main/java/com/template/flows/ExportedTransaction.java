@@ -0,0 +1,76 @@
+package com.template.flows;
+
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.CommandData;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.serialization.CordaSerializable;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A transaction of our contract with its input and reference states resolved, as returned by GetTransactionsFlow.
+ */
+@CordaSerializable
+public class ExportedTransaction {
+    private final SecureHash id;
+    private final Instant time;
+    private final List<Command<CommandData>> commands;
+    private final List<StateRef> inputRefs;
+    private final List<ContractState> inputs;
+    private final List<ContractState> outputs;
+    private final List<StateRef> referenceRefs;
+    private final List<ContractState> references;
+
+    public ExportedTransaction(SecureHash id, Instant time, List<Command<CommandData>> commands, List<StateRef> inputRefs,
+                               List<ContractState> inputs, List<ContractState> outputs, List<StateRef> referenceRefs,
+                               List<ContractState> references) {
+        this.id = id;
+        this.time = time;
+        this.commands = commands;
+        this.inputRefs = inputRefs;
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.referenceRefs = referenceRefs;
+        this.references = references;
+    }
+
+    public SecureHash getId() {
+        return id;
+    }
+
+    /** When the vault recorded the outputs, or else consumed the inputs, or null if it holds neither */
+    public Instant getTime() {
+        return time;
+    }
+
+    public List<Command<CommandData>> getCommands() {
+        return commands;
+    }
+
+    /** Outputs of earlier transactions consumed by this one */
+    public List<StateRef> getInputRefs() {
+        return inputRefs;
+    }
+
+    /** Input states, in the order of getInputRefs, null where the node cannot resolve them */
+    public List<ContractState> getInputs() {
+        return inputs;
+    }
+
+    public List<ContractState> getOutputs() {
+        return outputs;
+    }
+
+    /** Outputs of earlier transactions referred to by this one */
+    public List<StateRef> getReferenceRefs() {
+        return referenceRefs;
+    }
+
+    /** Reference states, in the order of getReferenceRefs, null where the node cannot resolve them */
+    public List<ContractState> getReferences() {
+        return references;
+    }
+}
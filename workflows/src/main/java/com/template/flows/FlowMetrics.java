@@ -0,0 +1,53 @@
+package com.template.flows;
+
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-wide counters kept by our flows, readable over RPC through GetFlowMetricsFlow.
+ */
+@CordaService
+public class FlowMetrics extends SingletonSerializeAsToken {
+    /** Input selections that found their state soft-locked by a concurrent flow. */
+    public static final String SELECTION_CONFLICTS = "selection.conflicts";
+    /** Input selections that gave up after exhausting their retries. */
+    public static final String SELECTION_FAILURES = "selection.failures";
+    /** Transactions rejected by the notary after signatures were collected. */
+    public static final String NOTARY_CONFLICTS = "notary.conflicts";
+    /** Requests from other nodes admitted for signing. */
+    public static final String REQUESTS_ADMITTED = "requests.admitted";
+    /** Requests from other nodes turned away for exceeding their rate. */
+    public static final String REQUESTS_THROTTLED = "requests.throttled";
+    /** Requests from other nodes turned away for exceeding their pending limit. */
+    public static final String REQUESTS_REJECTED_PENDING = "requests.rejectedPending";
+
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    public FlowMetrics(AppServiceHub serviceHub) {
+    }
+
+    /** Adds one to the counter NAME and returns its new value. */
+    public long increment(String name) {
+        return counters.computeIfAbsent(name, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    /** Returns the current value of the counter NAME. */
+    public long get(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /** Returns a copy of every counter, sorted by name. */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> result = new TreeMap<>();
+        counters.forEach((name, counter) -> result.put(name, counter.get()));
+        return result;
+    }
+}
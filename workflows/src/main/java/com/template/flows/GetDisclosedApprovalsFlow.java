@@ -0,0 +1,29 @@
+package com.template.flows;
+
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+import java.util.List;
+
+/**
+ * Returns up to LIMIT of the approvals disclosed to this node as tear-offs, from OFFSET on, by request date.
+ */
+@StartableByRPC
+public class GetDisclosedApprovalsFlow extends FlowLogic<List<DisclosedApproval>> {
+    static final int MAX_LIMIT = 1000;
+
+    private final int offset;
+    private final int limit;
+
+    public GetDisclosedApprovalsFlow(int offset, int limit) {
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    @Override
+    public List<DisclosedApproval> call() throws FlowException {
+        if (offset < 0 || limit <= 0 || limit > MAX_LIMIT) throw new FlowException("limit must be between 1 and " + MAX_LIMIT + "!");
+        return getServiceHub().cordaService(DisclosedApprovals.class).list(offset, limit);
+    }
+}
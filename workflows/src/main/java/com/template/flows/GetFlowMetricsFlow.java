@@ -0,0 +1,21 @@
+package com.template.flows;
+
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+import java.util.Map;
+
+/**
+ * Returns the counters kept in FlowMetrics on this node.
+ */
+@StartableByRPC
+public class GetFlowMetricsFlow extends FlowLogic<Map<String, Long>> {
+
+    public GetFlowMetricsFlow() {
+    }
+
+    @Override
+    public Map<String, Long> call() {
+        return getServiceHub().cordaService(FlowMetrics.class).snapshot();
+    }
+}
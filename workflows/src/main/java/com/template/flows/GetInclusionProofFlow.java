@@ -0,0 +1,29 @@
+package com.template.flows;
+
+import com.template.merkle.InclusionProof;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+/**
+ * Returns the proof that the transfer UID we approved is under the last published root of its period. Check it with
+ * InclusionProof.verify against the PeriodRootState of the period.
+ */
+@StartableByRPC
+public class GetInclusionProofFlow extends FlowLogic<InclusionProof> {
+    private final String uid;
+
+    public GetInclusionProofFlow(String uid) {
+        this.uid = uid;
+    }
+
+    @Override
+    public InclusionProof call() throws FlowException {
+        PeriodCommitments commitments = getServiceHub().cordaService(PeriodCommitments.class);
+        String period = commitments.periodOf(uid);
+        if (period == null) throw new FlowException("No approved transfer " + uid + " issued by us!");
+        InclusionProof proof = commitments.proof(uid);
+        if (proof == null) throw new FlowException("Transfer " + uid + " is not under a published root yet, please run PublishPeriodRootFlow for " + period + ".");
+        return proof;
+    }
+}
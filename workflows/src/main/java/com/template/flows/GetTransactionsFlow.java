@@ -0,0 +1,128 @@
+package com.template.flows;
+
+import com.template.contracts.TemplateContract;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.CommandData;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionResolutionException;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.WireTransaction;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Returns the next LIMIT verified transactions of the node after id AFTER, or from the first if AFTER is null, in id
+ * order, keeping those of our contract. Lets TransactionExport stream the history a batch at a time, where RPC only
+ * offers all of it at once.
+ */
+@StartableByRPC
+public class GetTransactionsFlow extends FlowLogic<TransactionBatch> {
+    static final int MAX_LIMIT = 1000;
+    /**
+     * Verified transaction ids after the given one, in order. Reads the node's own transaction storage, which is not
+     * a public API: as of Corda 4.4 (platform version 5) it is the node_transactions table, whose status is 'V' once
+     * a transaction is verified. To be checked on every node upgrade; FlowTests runs it against the node in the build.
+     */
+    static final String NEXT_IDS = "SELECT tx_id FROM node_transactions WHERE status = 'V' AND tx_id > ? ORDER BY tx_id";
+
+    private final SecureHash after;
+    private final int limit;
+
+    public GetTransactionsFlow(SecureHash after, int limit) {
+        this.after = after;
+        this.limit = limit;
+    }
+
+    @Override
+    public TransactionBatch call() throws FlowException {
+        if (limit <= 0 || limit > MAX_LIMIT) throw new FlowException("limit must be between 1 and " + MAX_LIMIT + "!");
+        List<SecureHash> ids = nextIds();
+
+        List<WireTransaction> transactions = new ArrayList<>();
+        List<StateRef> refs = new ArrayList<>();
+        for (SecureHash id : ids) {
+            SignedTransaction stx = getServiceHub().getValidatedTransactions().getTransaction(id);
+            if (stx == null || !(stx.getCoreTransaction() instanceof WireTransaction)) continue;
+            WireTransaction wtx = (WireTransaction) stx.getCoreTransaction();
+            if (wtx.getCommands().stream().noneMatch(command -> command.getValue() instanceof TemplateContract.Commands)) continue;
+            transactions.add(wtx);
+            refs.addAll(wtx.getInputs());
+            for (int i = 0; i < wtx.getOutputs().size(); i++) refs.add(new StateRef(wtx.getId(), i));
+        }
+
+        // The time each transaction happened: when its outputs were recorded, or else when its inputs were consumed.
+        Map<SecureHash, Instant> recordedTimes = new HashMap<>();
+        Map<StateRef, Instant> consumedTimes = new HashMap<>();
+        if (!refs.isEmpty()) {
+            Vault.Page<ContractState> page = getServiceHub().getVaultService().queryBy(ContractState.class,
+                    new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.ALL).withStateRefs(refs), new PageSpecification(DEFAULT_PAGE_NUM, refs.size()));
+            for (int i = 0; i < page.getStates().size(); i++) {
+                StateAndRef<ContractState> stateAndRef = page.getStates().get(i);
+                Vault.StateMetadata metadata = page.getStatesMetadata().get(i);
+                recordedTimes.merge(stateAndRef.getRef().getTxhash(), metadata.getRecordedTime(), (a, b) -> a.isBefore(b) ? a : b);
+                if (metadata.getConsumedTime() != null) consumedTimes.put(stateAndRef.getRef(), metadata.getConsumedTime());
+            }
+        }
+
+        List<ExportedTransaction> exported = new ArrayList<>();
+        for (WireTransaction wtx : transactions) {
+            Instant time = recordedTimes.get(wtx.getId());
+            List<ContractState> inputs = new ArrayList<>();
+            for (StateRef ref : wtx.getInputs()) {
+                inputs.add(resolve(ref));
+                if (time == null) time = consumedTimes.get(ref);
+            }
+            List<ContractState> outputs = new ArrayList<>();
+            wtx.getOutputs().forEach(output -> outputs.add(output.getData()));
+            List<ContractState> references = new ArrayList<>();
+            wtx.getReferences().forEach(ref -> references.add(resolve(ref)));
+            List<Command<CommandData>> commands = new ArrayList<>();
+            wtx.getCommands().forEach(command -> commands.add(new Command<>(command.getValue(), command.getSigners())));
+            exported.add(new ExportedTransaction(wtx.getId(), time, commands, wtx.getInputs(), inputs, outputs, wtx.getReferences(), references));
+        }
+        return new TransactionBatch(exported, ids.size() < limit ? null : ids.get(ids.size() - 1));
+    }
+
+    // Pages by id rather than by offset, so that every batch costs the same however deep into the history it is.
+    // The vault cannot list transactions instead: it does not record which transaction consumed a state, so
+    // declines, which have no outputs, would be missed.
+    private List<SecureHash> nextIds() throws FlowException {
+        List<SecureHash> ids = new ArrayList<>();
+        try (PreparedStatement select = getServiceHub().jdbcSession().prepareStatement(NEXT_IDS)) {
+            select.setString(1, after == null ? "" : after.toString());
+            select.setMaxRows(limit);
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) ids.add(SecureHash.parse(resultSet.getString(1)));
+            }
+        } catch (SQLException e) {
+            throw new FlowException("Cannot read the transactions of the node, whose schema may differ from Corda 4.4!", e);
+        }
+        return ids;
+    }
+
+    private ContractState resolve(StateRef ref) {
+        try {
+            return getServiceHub().loadState(ref).getData();
+        } catch (TransactionResolutionException e) {
+            return null;
+        }
+    }
+}
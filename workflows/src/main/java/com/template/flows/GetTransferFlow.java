@@ -0,0 +1,44 @@
+package com.template.flows;
+
+import com.template.schemas.TransferSchemaV1;
+import com.template.states.TransferState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.FieldInfo;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.QueryCriteriaUtils;
+
+import java.util.List;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Returns the summary of the unconsumed transfer whose UID starts with UID, as ApproveFlow and DeclineFlow match it.
+ */
+@StartableByRPC
+public class GetTransferFlow extends FlowLogic<TransferSummary> {
+    private final String uid;
+
+    public GetTransferFlow(String uid) {
+        this.uid = uid;
+    }
+
+    @Override
+    public TransferSummary call() throws FlowException {
+        if (uid.isEmpty()) throw new FlowException("uid cannot be empty!");
+        // UIDs are lower-case hexadecimal, which also keeps LIKE wildcards out of the prefix.
+        if (!uid.matches("[0-9a-f]+")) throw new FlowException("Transfer Not Found");
+        FieldInfo uidField = QueryCriteriaUtils.getField("uid", TransferSchemaV1.PersistentTransfer.class);
+        QueryCriteria criteria = new QueryCriteria.VaultCustomQueryCriteria(Builder.like(uidField, uid + "%"));
+        // Two matches are enough to know the prefix is ambiguous.
+        List<StateAndRef<TransferState>> found = getServiceHub().getVaultService().queryBy(TransferState.class,
+                criteria, new PageSpecification(DEFAULT_PAGE_NUM, 2), Utils.BY_RECORDED_TIME).getStates();
+        if (found.isEmpty()) throw new FlowException("Transfer Not Found");
+        if (found.size() > 1) throw new FlowException("More than one transfer matches " + uid + ", please give more of the UID.");
+        return TransferSummary.of(getServiceHub(), found.get(0));
+    }
+}
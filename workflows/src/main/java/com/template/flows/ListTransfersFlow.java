@@ -0,0 +1,64 @@
+package com.template.flows;
+
+import com.template.schemas.TransferSchemaV1;
+import com.template.states.TransferState;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.FieldInfo;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.QueryCriteriaUtils;
+import net.corda.core.serialization.CordaSerializable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Returns page PAGENUMBER, from 1, of the unconsumed transfers with STATUS, oldest first, as flat summaries. With
+ * INCLUDECONSUMED the transfers since approved or declined are listed as well.
+ */
+@StartableByRPC
+public class ListTransfersFlow extends FlowLogic<TransferPage> {
+    static final int MAX_PAGE_SIZE = 1000;
+
+    /** Filter on approval status. */
+    @CordaSerializable
+    public enum Status { ANY, PENDING, APPROVED }
+
+    private final Status status;
+    private final boolean includeConsumed;
+    private final int pageNumber;
+    private final int pageSize;
+
+    public ListTransfersFlow(Status status, int pageNumber, int pageSize) {
+        this(status, false, pageNumber, pageSize);
+    }
+
+    public ListTransfersFlow(Status status, boolean includeConsumed, int pageNumber, int pageSize) {
+        this.status = status;
+        this.includeConsumed = includeConsumed;
+        this.pageNumber = pageNumber;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public TransferPage call() throws FlowException {
+        if (pageNumber < 1) throw new FlowException("pageNumber starts at 1!");
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) throw new FlowException("pageSize must be between 1 and " + MAX_PAGE_SIZE + "!");
+        Vault.StateStatus stateStatus = includeConsumed ? Vault.StateStatus.ALL : Vault.StateStatus.UNCONSUMED;
+        QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(stateStatus);
+        // The approval status is a TransferSchemaV1 column, so the vault filters and counts the matches itself.
+        if (status != Status.ANY) {
+            FieldInfo approved = QueryCriteriaUtils.getField("approved", TransferSchemaV1.PersistentTransfer.class);
+            criteria = criteria.and(new QueryCriteria.VaultCustomQueryCriteria(Builder.equal(approved, status == Status.APPROVED), stateStatus));
+        }
+        Vault.Page<TransferState> page = getServiceHub().getVaultService().queryBy(TransferState.class,
+                criteria, new PageSpecification(pageNumber, pageSize), Utils.BY_RECORDED_TIME);
+        List<TransferSummary> transfers = new ArrayList<>();
+        page.getStates().forEach(stateAndRef -> transfers.add(TransferSummary.of(getServiceHub(), stateAndRef)));
+        return new TransferPage(transfers, pageNumber, pageSize, page.getTotalStatesAvailable());
+    }
+}
@@ -0,0 +1,149 @@
+package com.template.flows;
+
+import com.template.merkle.InclusionProof;
+import com.template.merkle.TransferTree;
+import com.template.states.PeriodRootState;
+import com.template.states.TransferState;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Keeps a TransferTree per period over the transfers this node approved, and the trees it last published, so that
+ * inclusion proofs are served without rebuilding anything.
+ *
+ * The trees are built from the vault on first use and then follow the vault's updates, each approval adding one
+ * transfer to its period's tree. Which transfers each published root covers is kept in the node database, see
+ * PublishedTransferSchemaV1, so that the published trees are rebuilt exactly after a restart.
+ */
+@CordaService
+public class PeriodCommitments extends SingletonSerializeAsToken {
+    private static final Logger logger = LoggerFactory.getLogger(PeriodCommitments.class);
+    private static final int PAGE_SIZE = 200;
+
+    private final AppServiceHub serviceHub;
+    private final Map<String, TransferTree> current = new HashMap<>();
+    private final Map<String, TransferTree> published = new HashMap<>();
+    /** Period of every transfer in the trees, by UID. */
+    private final Map<String, String> periods = new HashMap<>();
+    private boolean loaded;
+
+    public PeriodCommitments(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+    }
+
+    /** Returns the tree over the approved transfers of PERIOD so far. */
+    public synchronized TransferTree current(String period) {
+        load();
+        return current.getOrDefault(period, TransferTree.EMPTY_TREE);
+    }
+
+    /**
+     * Stores which transfers TREE, about to be published as the root of PERIOD, covers. Must be called from the
+     * publishing flow, whose database transaction it joins, so that nothing is stored if the flow fails before then.
+     */
+    public void publishing(String period, TransferTree tree) {
+        serviceHub.withEntityManager(entityManager -> {
+            Set<String> stored = new HashSet<>(entityManager.createQuery(
+                    "SELECT p.uid FROM " + PublishedTransferSchemaV1.PublishedTransfer.class.getName() + " p WHERE p.period = :period", String.class)
+                    .setParameter("period", period).getResultList());
+            for (String uid : tree.uids()) {
+                if (!stored.contains(uid)) entityManager.persist(new PublishedTransferSchemaV1.PublishedTransfer(uid, period, tree.size()));
+            }
+        });
+    }
+
+    /** Records that TREE has been published as the root of PERIOD. */
+    public synchronized void published(String period, TransferTree tree) {
+        TransferTree previous = published.get(period);
+        if (previous == null || tree.size() >= previous.size()) published.put(period, tree);
+    }
+
+    /** Returns the proof that transfer UID is under the last published root of its period, or null if it is not. */
+    public synchronized InclusionProof proof(String uid) {
+        load();
+        String period = periods.get(uid);
+        TransferTree tree = period == null ? null : published.get(period);
+        return tree == null ? null : tree.proof(uid);
+    }
+
+    /** Returns the period of transfer UID, or null if we have not approved it. */
+    public synchronized String periodOf(String uid) {
+        load();
+        return periods.get(uid);
+    }
+
+    // Subscribes before reading the vault, so that no approval falls between the two. Adding a transfer twice is harmless.
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        Party us = serviceHub.getMyInfo().getLegalIdentities().get(0);
+        serviceHub.getVaultService().getUpdates().subscribe(update -> {
+            for (StateAndRef<ContractState> produced : update.getProduced()) {
+                ContractState state = produced.getState().getData();
+                if (state instanceof TransferState) add((TransferState) state, us);
+            }
+        });
+
+        for (int page = DEFAULT_PAGE_NUM; ; page++) {
+            Vault.Page<TransferState> results = serviceHub.getVaultService().queryBy(TransferState.class, new PageSpecification(page, PAGE_SIZE));
+            results.getStates().forEach(stateAndRef -> add(stateAndRef.getState().getData(), us));
+            if ((long) page * PAGE_SIZE >= results.getTotalStatesAvailable()) break;
+        }
+
+        // Rebuild the published trees from the transfers stored for their roots.
+        List<StateAndRef<PeriodRootState>> roots = serviceHub.getVaultService().queryBy(PeriodRootState.class).getStates();
+        for (StateAndRef<PeriodRootState> stateAndRef : roots) {
+            PeriodRootState root = stateAndRef.getState().getData();
+            if (!root.getIssuer().equals(us)) continue;
+            TransferTree tree = rebuild(root);
+            if (tree != null) published.put(root.getPeriod(), tree);
+        }
+    }
+
+    /** Returns the tree under ROOT, or null if the transfers stored for it do not add up to it. */
+    private TransferTree rebuild(PeriodRootState root) {
+        TransferTree all = current.getOrDefault(root.getPeriod(), TransferTree.EMPTY_TREE);
+        List<String> uids = new ArrayList<>();
+        serviceHub.withEntityManager(entityManager -> {
+            uids.addAll(entityManager.createQuery(
+                    "SELECT p.uid FROM " + PublishedTransferSchemaV1.PublishedTransfer.class.getName() + " p WHERE p.period = :period AND p.rootCount <= :count", String.class)
+                    .setParameter("period", root.getPeriod()).setParameter("count", root.getCount()).getResultList());
+        });
+        TransferTree tree = TransferTree.EMPTY_TREE;
+        for (String uid : uids) {
+            SecureHash leaf = all.leaf(uid);
+            if (leaf == null) break;
+            tree = tree.with(uid, leaf);
+        }
+        if (tree.getRoot().equals(root.getRoot())) return tree;
+        // Roots published before the transfers were stored are known again while the tree has not moved on since.
+        if (all.getRoot().equals(root.getRoot())) return all;
+        logger.warn("Cannot rebuild the published tree of period {}, proofs are served after its next publication", root.getPeriod());
+        return null;
+    }
+
+    private synchronized void add(TransferState transfer, Party us) {
+        if (!transfer.getApprove() || !transfer.getIssuer().equals(us)) return;
+        String period = TransferTree.period(transfer.getRequestDate());
+        current.put(period, current.getOrDefault(period, TransferTree.EMPTY_TREE).with(transfer.getUid(), TransferTree.leafHash(transfer)));
+        periods.put(transfer.getUid(), period);
+    }
+}
@@ -0,0 +1,90 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.TemplateContract;
+import com.template.merkle.TransferTree;
+import com.template.states.PeriodRootState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * Publishes the Merkle root over the transfers we approved in PERIOD ("yyyy-MM"), replacing the previous root of the
+ * period if any. The root is shared with the observer nodes, where auditors can check inclusion proofs against it.
+ */
+@InitiatingFlow
+@StartableByRPC
+public class PublishPeriodRootFlow extends FlowLogic<SignedTransaction> {
+    private final String period;
+
+    /**
+     * The progress tracker provides checkpoints indicating the progress of the flow to observers.
+     */
+    private final ProgressTracker progressTracker = new ProgressTracker();
+
+    public PublishPeriodRootFlow(String period) {
+        this.period = period;
+    }
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+    /**
+     * The flow logic is encapsulated within the call() method.
+     */
+    @Suspendable
+    @Override
+    public SignedTransaction call() throws FlowException {
+        PeriodCommitments commitments = getServiceHub().cordaService(PeriodCommitments.class);
+        // The tree is immutable, so later approvals do not change what we publish.
+        TransferTree tree = commitments.current(period);
+        if (tree.size() == 0) throw new FlowException("No approved transfer in period " + period + "!");
+
+        StateAndRef<PeriodRootState> previous = null;
+        for (StateAndRef<PeriodRootState> stateAndRef : getServiceHub().getVaultService().queryBy(PeriodRootState.class).getStates()) {
+            PeriodRootState root = stateAndRef.getState().getData();
+            if (root.getIssuer().equals(getOurIdentity()) && root.getPeriod().equals(period)) previous = stateAndRef;
+        }
+        if (previous != null && previous.getState().getData().getRoot().equals(tree.getRoot())) {
+            commitments.published(period, tree);
+            throw new FlowException("The root of period " + period + " is already published.");
+        }
+
+        // We retrieve the notary identity from the network map.
+        Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+
+        Command command = new Command<>(new TemplateContract.Commands.PublishRoot(), getOurIdentity().getOwningKey());
+        TransactionBuilder txBuilder = new TransactionBuilder(notary)
+                .addOutputState(new PeriodRootState(getOurIdentity(), period, tree.getRoot(), tree.size()), TemplateContract.ID)
+                .addCommand(command);
+        if (previous != null) txBuilder.addInputState(previous);
+
+        // Verify transaction
+        txBuilder.verify(getServiceHub());
+
+        // Self Signing the transaction.
+        SignedTransaction signedTx = getServiceHub().signInitialTransaction(txBuilder);
+
+        List<FlowSession> observerSessions = new ArrayList<>();
+        for (Party observer : Utils.observers(getServiceHub())) {
+            observerSessions.add(initiateFlow(observer));
+        }
+        // Stored along with the transaction, so that the published tree can be rebuilt after a restart.
+        commitments.publishing(period, tree);
+        SignedTransaction finalTx = subFlow(new FinalityFlow(signedTx, observerSessions));
+        commitments.published(period, tree);
+        return finalTx;
+    }
+}
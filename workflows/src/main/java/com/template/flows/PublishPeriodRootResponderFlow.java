@@ -0,0 +1,25 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.*;
+import net.corda.core.transactions.SignedTransaction;
+
+
+// ******************
+// * Responder flow *
+// ******************
+@InitiatedBy(PublishPeriodRootFlow.class)
+public class PublishPeriodRootResponderFlow extends FlowLogic<SignedTransaction> {
+    private final FlowSession otherPartySession;
+
+    public PublishPeriodRootResponderFlow(FlowSession otherPartySession) {
+        this.otherPartySession = otherPartySession;
+    }
+
+    @Suspendable
+    @Override
+    public SignedTransaction call() throws FlowException {
+        // Finalize the Flow and save the published root
+        return subFlow(new ReceiveFinalityFlow(otherPartySession, null, Utils.statesToRecord(getServiceHub(), getOurIdentity())));
+    }
+}
@@ -0,0 +1,7 @@
+package com.template.flows;
+
+/**
+ * The family of schemas for the transfers under the period roots we published.
+ */
+public class PublishedTransferSchema {
+}
@@ -0,0 +1,61 @@
+package com.template.flows;
+
+import net.corda.core.schemas.MappedSchema;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.Collections;
+
+/**
+ * Version 1 of the published transfer schema: one row per transfer under a period root we published, with the count
+ * of the first root it was published under. The transfers under a root of count N are then the rows of its period
+ * with a count up to N, as trees only grow.
+ */
+public class PublishedTransferSchemaV1 extends MappedSchema {
+    public PublishedTransferSchemaV1() {
+        super(PublishedTransferSchema.class, 1, Collections.singletonList(PublishedTransfer.class));
+    }
+
+    @Override
+    public String getMigrationResource() {
+        return "published-transfer.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "published_transfers", indexes = {@Index(name = "published_transfers_period_idx", columnList = "period")})
+    public static class PublishedTransfer {
+        @Id
+        @Column(name = "uid", nullable = false)
+        private final String uid;
+        @Column(name = "period", nullable = false)
+        private final String period;
+        @Column(name = "root_count", nullable = false)
+        private final int rootCount;
+
+        public PublishedTransfer(String uid, String period, int rootCount) {
+            this.uid = uid;
+            this.period = period;
+            this.rootCount = rootCount;
+        }
+
+        // Default constructor required by hibernate.
+        public PublishedTransfer() {
+            this(null, null, 0);
+        }
+
+        public String getUid() {
+            return uid;
+        }
+
+        public String getPeriod() {
+            return period;
+        }
+
+        public int getRootCount() {
+            return rootCount;
+        }
+    }
+}
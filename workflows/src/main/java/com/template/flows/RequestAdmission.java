@@ -0,0 +1,101 @@
+package com.template.flows;
+
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for the RequestFlows other nodes start against us as issuer. Each requester gets a token bucket
+ * refilled at requestRate per second up to requestBurst, and at most maxPendingRequests of its requests are signed
+ * at a time. Excess requests are turned away before any signing or verification work.
+ *
+ * Every limit is read from the CorDapp config and is off unless set.
+ */
+@CordaService
+public class RequestAdmission extends SingletonSerializeAsToken {
+    /** CorDapp config key of the requests admitted per second from each requester. */
+    public static final String RATE_CONFIG = "requestRate";
+    /** CorDapp config key of the requests a requester may send at once after a quiet period. */
+    public static final String BURST_CONFIG = "requestBurst";
+    /** CorDapp config key of the requests of one requester signed at the same time. */
+    public static final String MAX_PENDING_CONFIG = "maxPendingRequests";
+
+    /** Requests per second, or 0 if requests are not rate limited. */
+    private final double rate;
+    private final double burst;
+    /** Requests signed at once per requester, or 0 if not limited. */
+    private final int maxPending;
+    private final ConcurrentMap<CordaX500Name, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<CordaX500Name, AtomicInteger> pending = new ConcurrentHashMap<>();
+    private final AppServiceHub serviceHub;
+
+    public RequestAdmission(AppServiceHub serviceHub) {
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.rate = config.exists(RATE_CONFIG) ? config.getDouble(RATE_CONFIG) : 0;
+        this.burst = config.exists(BURST_CONFIG) ? config.getDouble(BURST_CONFIG) : Math.max(1, rate);
+        this.maxPending = config.exists(MAX_PENDING_CONFIG) ? config.getInt(MAX_PENDING_CONFIG) : 0;
+        this.serviceHub = serviceHub;
+    }
+
+    /**
+     * Admits a request from REQUESTER, which must be released once handled, or throws if it exceeds the rate or the
+     * pending limit of REQUESTER.
+     */
+    public void admit(Party requester) throws FlowException {
+        CordaX500Name name = requester.getName();
+        FlowMetrics metrics = serviceHub.cordaService(FlowMetrics.class);
+        if (rate > 0 && !buckets.computeIfAbsent(name, key -> new TokenBucket(rate, burst)).tryAcquire(System.nanoTime())) {
+            metrics.increment(FlowMetrics.REQUESTS_THROTTLED);
+            throw new FlowException("Too many requests from " + name + ", please retry later.");
+        }
+        if (maxPending > 0) {
+            AtomicInteger count = pending.computeIfAbsent(name, key -> new AtomicInteger());
+            if (count.incrementAndGet() > maxPending) {
+                count.decrementAndGet();
+                metrics.increment(FlowMetrics.REQUESTS_REJECTED_PENDING);
+                throw new FlowException("Too many pending requests from " + name + ", please retry later.");
+            }
+        }
+        metrics.increment(FlowMetrics.REQUESTS_ADMITTED);
+    }
+
+    /** Releases a request from REQUESTER admitted by admit. */
+    public void release(Party requester) {
+        if (maxPending <= 0) return;
+        AtomicInteger count = pending.get(requester.getName());
+        // A flow resumed after a restart releases a request this instance never admitted.
+        if (count != null) count.getAndUpdate(value -> Math.max(0, value - 1));
+    }
+
+    /** Holds up to CAPACITY tokens, refilled at RATE per second. */
+    static class TokenBucket {
+        private final double capacity;
+        private final double ratePerNano;
+        private double tokens;
+        private long last;
+
+        TokenBucket(double rate, double capacity) {
+            this.capacity = capacity;
+            this.ratePerNano = rate / 1e9;
+            this.tokens = capacity;
+            this.last = System.nanoTime();
+        }
+
+        /** Takes a token at time NOW, in nanoseconds, and returns false if there is none left. */
+        synchronized boolean tryAcquire(long now) {
+            tokens = Math.min(capacity, tokens + (now - last) * ratePerNano);
+            last = now;
+            if (tokens < 1) return false;
+            tokens -= 1;
+            return true;
+        }
+    }
+}
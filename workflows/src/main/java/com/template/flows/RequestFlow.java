@@ -14,6 +14,7 @@ import net.corda.core.transactions.TransactionBuilder;
 import java.security.PublicKey;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -55,11 +56,16 @@ public class RequestFlow extends FlowLogic<SignedTransaction> {
         // We retrieve the notary identity from the network map.
         Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
 
-        // Get all nodes without notary to be added to the Transfer constructor as AllNodes
+        // Get all nodes without notary and observers to be added to the Transfer constructor as AllNodes
+        List<Party> observers = Utils.observers(getServiceHub());
+        if (observers.contains(getOurIdentity()) || observers.contains(issuer)) throw new FlowException("Observer nodes do not take part in transfers!");
         List<AbstractParty> parties = getServiceHub().getNetworkMapCache().getAllNodes().stream()
                 .map(nodeInfo -> nodeInfo.getLegalIdentities().get(0))
                 .collect(Collectors.toList());
         parties.remove(notary);
+        parties.removeAll(observers);
+        // With filtered disclosure the other nodes only ever see a tear-off of the approval, so they are not participants.
+        if (Utils.filteredDisclosure(getServiceHub())) parties = Arrays.asList(issuer, getOurIdentity());
 
         // We create the transaction components.
 
@@ -94,6 +100,12 @@ public class RequestFlow extends FlowLogic<SignedTransaction> {
         // Initiate Session with issuer to Finalize flow
         List<FlowSession> allSessions = new ArrayList<FlowSession>();
         allSessions.add(issuerSes);
+        // Observers record every finalized transfer without signing it
+        for (Party observer : observers) {
+            FlowSession session = initiateFlow(observer);
+            session.send(false);
+            allSessions.add(session);
+        }
 //
 //        for(AbstractParty party: parties){
 //            if(!party.equals(getOurIdentity())) {
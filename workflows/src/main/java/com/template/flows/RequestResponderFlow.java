@@ -20,10 +20,20 @@ public class RequestResponderFlow extends FlowLogic<SignedTransaction> {
     @Suspendable
     @Override
     public SignedTransaction call() throws FlowException {
-        boolean flag = otherPartySession.receive(Boolean.class).unwrap(it -> it);
-        // Flag to decide when CollectSignaturesFlow is called for this counterparty. SignTransactionFlow is
-        // executed only if CollectSignaturesFlow is called from the initiator.
-        if(flag) {
+        // Observers record every request without signing it, so they admit every requester.
+        if (Utils.observers(getServiceHub()).contains(getOurIdentity())) {
+            boolean flag = otherPartySession.receive(Boolean.class).unwrap(it -> it);
+            if (flag) throw new FlowException("Observer nodes do not take part in transfers!");
+            return subFlow(new ReceiveFinalityFlow(otherPartySession, null, Utils.statesToRecord(getServiceHub(), getOurIdentity())));
+        }
+        // Turn away requesters over their limits before receiving, signing or verifying anything from them.
+        RequestAdmission admission = getServiceHub().cordaService(RequestAdmission.class);
+        admission.admit(otherPartySession.getCounterparty());
+        try {
+            boolean flag = otherPartySession.receive(Boolean.class).unwrap(it -> it);
+            // Flag to decide when CollectSignaturesFlow is called for this counterparty. Only observers are sent
+            // requests to record without signing them.
+            if (!flag) throw new FlowException("Only observer nodes record requests without signing them!");
             subFlow(new SignTransactionFlow(otherPartySession) {
                 @Override
                 protected void checkTransaction(@NotNull SignedTransaction stx) throws FlowException {
@@ -33,7 +43,9 @@ public class RequestResponderFlow extends FlowLogic<SignedTransaction> {
                     }
                 }
             });
+            return subFlow(new ReceiveFinalityFlow(otherPartySession, null, Utils.statesToRecord(getServiceHub(), getOurIdentity())));
+        } finally {
+            admission.release(otherPartySession.getCounterparty());
         }
-        return subFlow(new ReceiveFinalityFlow(otherPartySession));
     }
-}
\ No newline at end of file
+}
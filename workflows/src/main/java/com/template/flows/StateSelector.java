@@ -0,0 +1,128 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.node.services.StatesNotAvailableException;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.utilities.NonEmptySet;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Selects input states for our flows and reserves them with a vault soft lock, so that concurrent flows on the same
+ * node never build and sign transactions that are bound to conflict at the notary. The lock is held until the
+ * selecting flow ends.
+ */
+class StateSelector {
+    /** Number of selections attempted before giving up. */
+    static final int MAX_ATTEMPTS = 5;
+    /** Wait before the first retry, doubled on every following one. */
+    static final Duration INITIAL_BACKOFF = Duration.ofMillis(100);
+    /** Number of states fetched from the vault at a time. */
+    private static final int PAGE_SIZE = 200;
+
+    /** Filter over candidate states. Serializable, as it is held across the checkpoints taken while backing off. */
+    interface StateFilter<T extends ContractState> extends Serializable {
+        boolean test(T state);
+    }
+
+    /**
+     * Returns an unconsumed state of TYPE accepted by FILTER, soft-locked for FLOW, or null if no such state exists.
+     * States already locked by other flows are skipped; if they are the only matches we back off and retry, up to
+     * MAX_ATTEMPTS. RANDOM picks among all unlocked matches rather than the first one, to spread concurrent flows
+     * over interchangeable states.
+     */
+    @Suspendable
+    static <T extends ContractState> StateAndRef<T> selectAndReserve(FlowLogic<?> flow, Class<T> type, StateFilter<T> filter, boolean random) throws FlowException {
+        FlowMetrics metrics = flow.getServiceHub().cordaService(FlowMetrics.class);
+        UUID lockId = flow.getRunId().getUuid();
+        Duration backoff = INITIAL_BACKOFF;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            List<StateAndRef<T>> candidates = query(flow, type, filter, true, random);
+            if (candidates.isEmpty()) {
+                // Nothing unlocked matches: either nothing matches at all, or every match is held by another flow.
+                if (query(flow, type, filter, false, false).isEmpty()) return null;
+            } else {
+                StateAndRef<T> candidate = random ? candidates.get(ThreadLocalRandom.current().nextInt(candidates.size())) : candidates.get(0);
+                try {
+                    flow.getServiceHub().getVaultService().softLockReserve(lockId, NonEmptySet.of(candidate.getRef()));
+                    return candidate;
+                } catch (StatesNotAvailableException e) {
+                    // Another flow locked it between our query and our reservation.
+                }
+            }
+            metrics.increment(FlowMetrics.SELECTION_CONFLICTS);
+            if (attempt < MAX_ATTEMPTS) {
+                FlowLogic.sleep(backoff);
+                backoff = backoff.multipliedBy(2);
+            }
+        }
+        metrics.increment(FlowMetrics.SELECTION_FAILURES);
+        throw new FlowException("Every matching " + type.getSimpleName() + " is in use by a concurrent flow, please retry later.");
+    }
+
+    /**
+     * Returns every unconsumed state of TYPE accepted by FILTER that no other flow holds, soft-locked for FLOW. States
+     * held by other flows are left out rather than waited for; if some are locked between our query and our
+     * reservation we back off and retry, up to MAX_ATTEMPTS.
+     */
+    @Suspendable
+    static <T extends ContractState> List<StateAndRef<T>> reserveUnlocked(FlowLogic<?> flow, Class<T> type, StateFilter<T> filter) throws FlowException {
+        FlowMetrics metrics = flow.getServiceHub().cordaService(FlowMetrics.class);
+        UUID lockId = flow.getRunId().getUuid();
+        Duration backoff = INITIAL_BACKOFF;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            List<StateAndRef<T>> candidates = query(flow, type, filter, true, true);
+            if (candidates.isEmpty()) return candidates;
+            List<StateRef> refs = new ArrayList<>();
+            candidates.forEach(candidate -> refs.add(candidate.getRef()));
+            try {
+                flow.getServiceHub().getVaultService().softLockReserve(lockId, NonEmptySet.copyOf(refs));
+                return candidates;
+            } catch (StatesNotAvailableException e) {
+                // Another flow locked some of them between our query and our reservation, which reserved none.
+            }
+            metrics.increment(FlowMetrics.SELECTION_CONFLICTS);
+            if (attempt < MAX_ATTEMPTS) {
+                FlowLogic.sleep(backoff);
+                backoff = backoff.multipliedBy(2);
+            }
+        }
+        metrics.increment(FlowMetrics.SELECTION_FAILURES);
+        throw new FlowException("Every matching " + type.getSimpleName() + " is in use by a concurrent flow, please retry later.");
+    }
+
+    // Pages through the unconsumed states of TYPE, restricted to unlocked ones if UNLOCKEDONLY. Stops at the first
+    // match unless ALL is set.
+    private static <T extends ContractState> List<StateAndRef<T>> query(FlowLogic<?> flow, Class<T> type, StateFilter<T> filter, boolean unlockedOnly, boolean all) {
+        QueryCriteria.VaultQueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        if (unlockedOnly) {
+            criteria = criteria.withSoftLockingCondition(new QueryCriteria.SoftLockingCondition(QueryCriteria.SoftLockingType.UNLOCKED_ONLY, Collections.emptyList()));
+        }
+        List<StateAndRef<T>> matches = new ArrayList<>();
+        for (int page = DEFAULT_PAGE_NUM; ; page++) {
+            Vault.Page<T> results = flow.getServiceHub().getVaultService().queryBy(type, criteria, new PageSpecification(page, PAGE_SIZE));
+            for (StateAndRef<T> stateAndRef : results.getStates()) {
+                if (filter.test(stateAndRef.getState().getData())) {
+                    matches.add(stateAndRef);
+                    if (!all) return matches;
+                }
+            }
+            if ((long) page * PAGE_SIZE >= results.getTotalStatesAvailable()) return matches;
+        }
+    }
+}
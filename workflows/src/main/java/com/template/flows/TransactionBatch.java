@@ -0,0 +1,30 @@
+package com.template.flows;
+
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.serialization.CordaSerializable;
+
+import java.util.List;
+
+/**
+ * One batch of the transactions of a node, as returned by GetTransactionsFlow.
+ */
+@CordaSerializable
+public class TransactionBatch {
+    private final List<ExportedTransaction> transactions;
+    private final SecureHash last;
+
+    public TransactionBatch(List<ExportedTransaction> transactions, SecureHash last) {
+        this.transactions = transactions;
+        this.last = last;
+    }
+
+    /** Transactions of our contract in the batch, which may be none */
+    public List<ExportedTransaction> getTransactions() {
+        return transactions;
+    }
+
+    /** Id to ask for the next batch after, or null if this was the last one */
+    public SecureHash getLast() {
+        return last;
+    }
+}
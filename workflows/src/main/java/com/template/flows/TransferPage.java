@@ -0,0 +1,46 @@
+package com.template.flows;
+
+import net.corda.core.serialization.CordaSerializable;
+
+import java.util.List;
+
+/**
+ * One page of transfer summaries, as returned by ListTransfersFlow.
+ */
+@CordaSerializable
+public class TransferPage {
+    private final List<TransferSummary> transfers;
+    private final int pageNumber;
+    private final int pageSize;
+    private final long total;
+
+    public TransferPage(List<TransferSummary> transfers, int pageNumber, int pageSize, long total) {
+        this.transfers = transfers;
+        this.pageNumber = pageNumber;
+        this.pageSize = pageSize;
+        this.total = total;
+    }
+
+    public List<TransferSummary> getTransfers() {
+        return transfers;
+    }
+
+    /** Number of this page, from 1 */
+    public int getPageNumber() {
+        return pageNumber;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /** Number of transfers matching the query across all pages */
+    public long getTotal() {
+        return total;
+    }
+
+    /** Returns true if there are pages after this one. */
+    public boolean hasMore() {
+        return (long) pageNumber * pageSize < total;
+    }
+}
@@ -0,0 +1,31 @@
+package com.template.flows;
+
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.ServiceLifecycleEvent;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs BackfillTransfersFlow once the node is ready to run flows, so that the transfers recorded before
+ * TransferSchemaV1 existed are found by the queries filtering on its columns.
+ */
+@CordaService
+public class TransferSchemaBackfill extends SingletonSerializeAsToken {
+    private final static Logger logger = LoggerFactory.getLogger(TransferSchemaBackfill.class);
+
+    public TransferSchemaBackfill(AppServiceHub serviceHub) {
+        serviceHub.register(AppServiceHub.SERVICE_PRIORITY_NORMAL, event -> {
+            if (event != ServiceLifecycleEvent.STATE_MACHINE_STARTED) return;
+            serviceHub.startFlow(new BackfillTransfersFlow()).getReturnValue().then(result -> {
+                try {
+                    result.get();
+                } catch (Exception e) {
+                    logger.error("Could not write the transfer_states rows of earlier transfers", e);
+                }
+                return null;
+            });
+        });
+    }
+}
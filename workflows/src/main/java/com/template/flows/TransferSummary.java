@@ -0,0 +1,96 @@
+package com.template.flows;
+
+import com.template.states.TransferState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.serialization.CordaSerializable;
+
+import java.time.Instant;
+
+/**
+ * Flat summary of an unconsumed TransferState for RPC clients, without the notary, constraint, participants and
+ * contract that come with a StateAndRef.
+ */
+@CordaSerializable
+public class TransferSummary {
+    private final String ref;
+    private final String uid;
+    private final String issuer;
+    private final String requester;
+    private final long amount;
+    private final Instant requestDate;
+    private final Instant validUntil;
+    private final boolean approved;
+    private final String title;
+    private final String description;
+
+    public TransferSummary(String ref, String uid, String issuer, String requester, long amount, Instant requestDate,
+                           Instant validUntil, boolean approved, String title, String description) {
+        this.ref = ref;
+        this.uid = uid;
+        this.issuer = issuer;
+        this.requester = requester;
+        this.amount = amount;
+        this.requestDate = requestDate;
+        this.validUntil = validUntil;
+        this.approved = approved;
+        this.title = title;
+        this.description = description;
+    }
+
+    /** Returns the summary of STATEANDREF, naming parties as known to SERVICEHUB. */
+    static TransferSummary of(ServiceHub serviceHub, StateAndRef<TransferState> stateAndRef) {
+        TransferState state = stateAndRef.getState().getData();
+        return new TransferSummary(stateAndRef.getRef().toString(), state.getUid(), nameOf(serviceHub, state.getIssuer()),
+                nameOf(serviceHub, state.getRequester()), state.getAmount(), state.getRequestDate(), state.getValidUntil(),
+                state.getApprove(), state.getTitle(), state.getDescription());
+    }
+
+    private static String nameOf(ServiceHub serviceHub, AbstractParty party) {
+        Party wellKnown = serviceHub.getIdentityService().wellKnownPartyFromAnonymous(party);
+        return wellKnown != null ? wellKnown.getName().toString() : party.getOwningKey().toString();
+    }
+
+    /** Reference of the state, as "txhash(index)" */
+    public String getRef() {
+        return ref;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public String getRequester() {
+        return requester;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public Instant getRequestDate() {
+        return requestDate;
+    }
+
+    public Instant getValidUntil() {
+        return validUntil;
+    }
+
+    public boolean getApproved() {
+        return approved;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
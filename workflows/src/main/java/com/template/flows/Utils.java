@@ -1,11 +1,29 @@
 package com.template.flows;
 
+import com.template.states.BudgetState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.node.StatesToRecord;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Formatter;
 import java.util.List;
 
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
 public class Utils {
     /* SHA-1 HASH VALUES. */
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
@@ -40,4 +58,61 @@ public class Utils {
     public static String sha1(List<Object> vals) {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
+
+    /* BUDGET ENVELOPES. */
+    /** Vault page size used when loading budget shards. */
+    static final int BUDGET_PAGE_SIZE = 200;
+
+    /** Returns the unconsumed shards of ISSUER's budget envelope held in the vault of SERVICEHUB, across every page. */
+    public static List<StateAndRef<BudgetState>> budgetShards(ServiceHub serviceHub, AbstractParty issuer) {
+        List<StateAndRef<BudgetState>> shards = new ArrayList<>();
+        for (int page = DEFAULT_PAGE_NUM; ; page++) {
+            Vault.Page<BudgetState> results = serviceHub.getVaultService().queryBy(BudgetState.class,
+                    new QueryCriteria.VaultQueryCriteria(), new PageSpecification(page, BUDGET_PAGE_SIZE));
+            results.getStates().stream()
+                    .filter(shardStateAndRef -> shardStateAndRef.getState().getData().getIssuer().equals(issuer))
+                    .forEach(shards::add);
+            if ((long) page * BUDGET_PAGE_SIZE >= results.getTotalStatesAvailable()) return shards;
+        }
+    }
+
+    /* OBSERVERS. */
+    /** CorDapp config key listing the X.500 names of the observer nodes, separated by semicolons. */
+    public static final String OBSERVERS_CONFIG = "observers";
+
+    /** Returns the observer nodes configured for SERVICEHUB that are present in its network map. Observers receive
+     *  every finalized transfer and serve read traffic, but never take part in transfers. */
+    public static List<Party> observers(ServiceHub serviceHub) {
+        List<Party> observers = new ArrayList<>();
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        if (!config.exists(OBSERVERS_CONFIG)) return observers;
+        for (String name : config.getString(OBSERVERS_CONFIG).split(";")) {
+            if (name.trim().isEmpty()) continue;
+            Party observer = serviceHub.getIdentityService().wellKnownPartyFromX500Name(CordaX500Name.parse(name.trim()));
+            if (observer != null) observers.add(observer);
+        }
+        return observers;
+    }
+
+    /** Returns how the node of SERVICEHUB, identified as US, records the transactions it receives: observers record
+     *  every state, so that they can answer queries about transfers they do not take part in. */
+    public static StatesToRecord statesToRecord(ServiceHub serviceHub, Party us) {
+        return observers(serviceHub).contains(us) ? StatesToRecord.ALL_VISIBLE : StatesToRecord.ONLY_RELEVANT;
+    }
+
+    /* DISCLOSURE. */
+    /** CorDapp config key choosing how approvals reach the nodes outside a transfer: "full" (the default) sends
+     *  them the whole transaction, "filtered" only a tear-off of its Approve command. */
+    public static final String DISCLOSURE_CONFIG = "disclosure";
+
+    /** Returns true if the node of SERVICEHUB discloses approvals to non-participants as filtered transactions. */
+    public static boolean filteredDisclosure(ServiceHub serviceHub) {
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        return config.exists(DISCLOSURE_CONFIG) && "filtered".equals(config.getString(DISCLOSURE_CONFIG));
+    }
+
+    /* TRANSFERS. */
+    /** Oldest first. */
+    static final Sort BY_RECORDED_TIME = new Sort(Collections.singleton(new Sort.SortColumn(
+            new SortAttribute.Standard(Sort.VaultStateAttribute.RECORDED_TIME), Sort.Direction.ASC)));
 }
@@ -0,0 +1,109 @@
+package com.template;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.template.flows.ApproveFlow;
+import com.template.flows.DisclosedApproval;
+import com.template.flows.GetDisclosedApprovalsFlow;
+import com.template.flows.RequestFlow;
+import com.template.flows.Utils;
+import com.template.states.TransferState;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DisclosureTests {
+    private static final CordaX500Name OBSERVER = new CordaX500Name("Observer", "London", "GB");
+
+    private final MockNetwork network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+            TestCordapp.findCordapp("com.template.contracts"),
+            TestCordapp.findCordapp("com.template.flows").withConfig(ImmutableMap.of(
+                    Utils.DISCLOSURE_CONFIG, "filtered",
+                    Utils.OBSERVERS_CONFIG, OBSERVER.toString()))
+    )));
+    private final StartedMockNode a = network.createNode();
+    private final StartedMockNode b = network.createNode();
+    private final StartedMockNode c = network.createNode();
+    private final StartedMockNode observer = network.createNode(OBSERVER);
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void nonParticipantsOnlyReceiveTheApprovalTearOff() throws Exception {
+        TransferState request = request();
+        SignedTransaction approval = approve(request);
+
+        // The requester still gets the whole transaction, the third node neither it nor the state.
+        assertNotNull(a.getServices().getValidatedTransactions().getTransaction(approval.getId()));
+        assertNull(c.getServices().getValidatedTransactions().getTransaction(approval.getId()));
+        c.transaction(() -> {
+            assertTrue(c.getServices().getVaultService().queryBy(TransferState.class).getStates().isEmpty());
+            return null;
+        });
+
+        CordaFuture<List<DisclosedApproval>> disclosedFuture = c.startFlow(new GetDisclosedApprovalsFlow(0, 10));
+        network.runNetwork();
+        List<DisclosedApproval> disclosed = disclosedFuture.get();
+        assertEquals(1, disclosed.size());
+        assertEquals(approval.getId().toString(), disclosed.get(0).getTxId());
+        assertEquals(request.getUid(), disclosed.get(0).getUid());
+        assertEquals(100, disclosed.get(0).getAmount());
+        assertEquals(b.getInfo().getLegalIdentities().get(0).getName().toString(), disclosed.get(0).getIssuer());
+    }
+
+    @Test
+    public void observersReceiveTheWholeApproval() throws Exception {
+        TransferState request = request();
+        SignedTransaction approval = approve(request);
+
+        // The observer recorded the request in full, so it must see it consumed by the approval.
+        assertNotNull(observer.getServices().getValidatedTransactions().getTransaction(approval.getId()));
+        observer.transaction(() -> {
+            List<StateAndRef<TransferState>> unconsumed = observer.getServices().getVaultService().queryBy(TransferState.class).getStates();
+            assertEquals(1, unconsumed.size());
+            assertTrue(unconsumed.get(0).getState().getData().getApprove());
+            assertEquals(request.getUid(), unconsumed.get(0).getState().getData().getUid());
+            assertEquals(1, observer.getServices().getVaultService().queryBy(TransferState.class,
+                    new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.CONSUMED)).getStates().size());
+            return null;
+        });
+
+        CordaFuture<List<DisclosedApproval>> disclosedFuture = observer.startFlow(new GetDisclosedApprovalsFlow(0, 10));
+        network.runNetwork();
+        assertTrue(disclosedFuture.get().isEmpty());
+    }
+
+    private TransferState request() throws Exception {
+        CordaFuture<SignedTransaction> requestFuture = a.startFlow(new RequestFlow(b.getInfo().getLegalIdentities().get(0), "test", "description", 120));
+        network.runNetwork();
+        return (TransferState) requestFuture.get().getTx().getOutput(0);
+    }
+
+    private SignedTransaction approve(TransferState request) throws Exception {
+        CordaFuture<SignedTransaction> approveFuture = b.startFlow(new ApproveFlow(request.getUid(), 100));
+        network.runNetwork();
+        return approveFuture.get();
+    }
+}
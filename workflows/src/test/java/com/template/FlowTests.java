@@ -1,10 +1,27 @@
 package com.template;
 
 import com.google.common.collect.ImmutableList;
+import com.template.flows.ApproveFlow;
+import com.template.flows.BackfillTransfersFlow;
+import com.template.flows.ConsolidateBudgetFlow;
+import com.template.flows.CreateBudgetFlow;
+import com.template.flows.FlowMetrics;
+import com.template.flows.GetFlowMetricsFlow;
+import com.template.flows.GetTransactionsFlow;
+import com.template.flows.GetTransferFlow;
+import com.template.flows.ListTransfersFlow;
 import com.template.flows.RequestFlow;
+import com.template.flows.TransactionBatch;
+import com.template.flows.TransferPage;
+import com.template.flows.TransferSummary;
+import com.template.schemas.TransferSchemaV1;
+import com.template.states.BudgetState;
+import com.template.states.DrawdownState;
 import com.template.states.TransferState;
 import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.StateAndRef;
 import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.NonEmptySet;
 import net.corda.testing.node.MockNetwork;
 import net.corda.testing.node.MockNetworkParameters;
 import net.corda.testing.node.StartedMockNode;
@@ -12,6 +29,11 @@ import net.corda.testing.node.TestCordapp;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.time.Instant;
 import java.time.ZoneOffset;
@@ -53,4 +75,250 @@ public class FlowTests {
         assertEquals(120, output.getAmount());
     }
 
+    @Test
+    public void approvalDrawsDownBudgetShard() throws Exception {
+        b.startFlow(new CreateBudgetFlow(1000, 4));
+        network.runNetwork();
+        String uid = request(a, b, 120);
+
+        b.startFlow(new ApproveFlow(uid, 100));
+        network.runNetwork();
+
+        long remaining = b.getServices().getVaultService().queryBy(BudgetState.class).getStates().stream()
+                .mapToLong(shard -> shard.getState().getData().getRemaining()).sum();
+        assertEquals(900, remaining);
+        List<StateAndRef<DrawdownState>> receipts = b.getServices().getVaultService().queryBy(DrawdownState.class).getStates();
+        assertEquals(1, receipts.size());
+        assertEquals(uid, receipts.get(0).getState().getData().getUid());
+        assertEquals(100, receipts.get(0).getState().getData().getAmount());
+    }
+
+    @Test
+    public void approvalDrawsAcrossShardsWhenNoneHoldsTheAmount() throws Exception {
+        b.startFlow(new CreateBudgetFlow(200, 4));
+        network.runNetwork();
+        String uid = request(a, b, 120);
+
+        CordaFuture<SignedTransaction> future = b.startFlow(new ApproveFlow(uid, 120));
+        network.runNetwork();
+        future.get();
+
+        List<StateAndRef<BudgetState>> shards = b.getServices().getVaultService().queryBy(BudgetState.class).getStates();
+        assertEquals(4, shards.size());
+        assertEquals(80, shards.stream().mapToLong(shard -> shard.getState().getData().getRemaining()).sum());
+        assertEquals(120, b.getServices().getVaultService().queryBy(DrawdownState.class).getStates().get(0).getState().getData().getAmount());
+    }
+
+    @Test
+    public void approvalCannotExceedBudgetEnvelope() throws Exception {
+        b.startFlow(new CreateBudgetFlow(200, 4));
+        network.runNetwork();
+        String uid = request(a, b, 300);
+
+        CordaFuture<SignedTransaction> future = b.startFlow(new ApproveFlow(uid, 250));
+        network.runNetwork();
+        try {
+            future.get();
+            fail("Approval above the budget envelope should have been rejected");
+        } catch (ExecutionException e) {
+            assertEquals("Approval exceeds the remaining budget envelope!", e.getCause().getMessage());
+        }
+        assertEquals(200, b.getServices().getVaultService().queryBy(BudgetState.class).getStates().stream()
+                .mapToLong(shard -> shard.getState().getData().getRemaining()).sum());
+    }
+
+    @Test
+    public void consolidationLeavesShardsHeldByOtherFlows() throws Exception {
+        b.startFlow(new CreateBudgetFlow(200, 4));
+        network.runNetwork();
+        approve(request(a, b, 120), 120);
+        // Hold the shard drawn down to 30, as an approval in flight would.
+        UUID lockId = UUID.randomUUID();
+        b.transaction(() -> {
+            StateAndRef<BudgetState> held = b.getServices().getVaultService().queryBy(BudgetState.class).getStates().stream()
+                    .filter(shard -> shard.getState().getData().getRemaining() == 30).findFirst().get();
+            b.getServices().getVaultService().softLockReserve(lockId, NonEmptySet.of(held.getRef()));
+            return null;
+        });
+
+        CordaFuture<SignedTransaction> future = b.startFlow(new ConsolidateBudgetFlow());
+        network.runNetwork();
+        List<BudgetState> reissued = future.get().getTx().outputsOfType(BudgetState.class);
+
+        assertEquals(3, reissued.size());
+        assertEquals(50, reissued.stream().mapToLong(BudgetState::getRemaining).sum());
+        assertTrue(reissued.stream().allMatch(shard -> shard.getRemaining() == 16 || shard.getRemaining() == 17));
+    }
+
+    @Test
+    public void transfersAreListedAsPagedSummaries() throws Exception {
+        String first = request(a, b, 100);
+        request(a, b, 200);
+        request(c, b, 300);
+        b.startFlow(new ApproveFlow(first, 100));
+        network.runNetwork();
+
+        CordaFuture<TransferPage> pageFuture = b.startFlow(new ListTransfersFlow(ListTransfersFlow.Status.ANY, 2, 2));
+        network.runNetwork();
+        TransferPage page = pageFuture.get();
+        assertEquals(3, page.getTotal());
+        assertEquals(1, page.getTransfers().size());
+        assertFalse(page.hasMore());
+
+        CordaFuture<TransferPage> pendingFuture = b.startFlow(new ListTransfersFlow(ListTransfersFlow.Status.PENDING, 1, 10));
+        network.runNetwork();
+        assertEquals(2, pendingFuture.get().getTotal());
+
+        CordaFuture<TransferPage> approvedFuture = b.startFlow(new ListTransfersFlow(ListTransfersFlow.Status.APPROVED, 1, 10));
+        network.runNetwork();
+        TransferPage approved = approvedFuture.get();
+        assertEquals(1, approved.getTotal());
+        assertEquals(first, approved.getTransfers().get(0).getUid());
+
+        CordaFuture<TransferSummary> summaryFuture = b.startFlow(new GetTransferFlow(first.substring(0, 8)));
+        network.runNetwork();
+        TransferSummary summary = summaryFuture.get();
+        assertEquals(first, summary.getUid());
+        assertTrue(summary.getApproved());
+        assertEquals(a.getInfo().getLegalIdentities().get(0).getName().toString(), summary.getRequester());
+    }
+
+    @Test
+    public void transfersRecordedBeforeTheSchemaAreBackfilled() throws Exception {
+        request(a, b, 100);
+        // Drop the rows, as for transfers recorded before the schema existed.
+        b.transaction(() -> {
+            b.getServices().withEntityManager(entityManager -> {
+                entityManager.createQuery("DELETE FROM " + TransferSchemaV1.PersistentTransfer.class.getName()).executeUpdate();
+            });
+            return null;
+        });
+        CordaFuture<TransferPage> before = b.startFlow(new ListTransfersFlow(ListTransfersFlow.Status.PENDING, 1, 10));
+        network.runNetwork();
+        assertEquals(0, before.get().getTotal());
+
+        CordaFuture<Long> backfill = b.startFlow(new BackfillTransfersFlow());
+        network.runNetwork();
+        assertEquals(1L, (long) backfill.get());
+        CordaFuture<Long> again = b.startFlow(new BackfillTransfersFlow());
+        network.runNetwork();
+        assertEquals(0L, (long) again.get());
+
+        CordaFuture<TransferPage> after = b.startFlow(new ListTransfersFlow(ListTransfersFlow.Status.PENDING, 1, 10));
+        network.runNetwork();
+        assertEquals(1, after.get().getTotal());
+    }
+
+    @Test
+    public void transactionsAreExportedInBatchesById() throws Exception {
+        for (int i = 0; i < 3; i++) request(a, b, 100);
+
+        CordaFuture<TransactionBatch> firstFuture = b.startFlow(new GetTransactionsFlow(null, 2));
+        network.runNetwork();
+        TransactionBatch first = firstFuture.get();
+        assertEquals(2, first.getTransactions().size());
+        assertNotNull(first.getLast());
+
+        CordaFuture<TransactionBatch> secondFuture = b.startFlow(new GetTransactionsFlow(first.getLast(), 2));
+        network.runNetwork();
+        TransactionBatch second = secondFuture.get();
+        assertEquals(1, second.getTransactions().size());
+        assertNull(second.getLast());
+        assertTrue(second.getTransactions().get(0).getId().toString().compareTo(first.getLast().toString()) > 0);
+    }
+
+    @Test
+    public void concurrentApprovalsOfTheSameRequestAreSerializedBySoftLocks() throws Exception {
+        String uid = request(a, b, 100);
+        CordaFuture<SignedTransaction> first = b.startFlow(new ApproveFlow(uid, 100));
+        CordaFuture<SignedTransaction> second = b.startFlow(new ApproveFlow(uid, 50));
+
+        int approved = 0;
+        for (CordaFuture<SignedTransaction> future : Arrays.asList(first, second)) {
+            try {
+                await(future);
+                approved++;
+            } catch (ExecutionException e) {
+                // The loser found the request locked, then gone once the winner consumed it, or never free in time.
+                String message = e.getCause().getMessage();
+                assertTrue(message, message.contains("Not Found") || message.contains("in use by a concurrent flow"));
+            }
+        }
+        assertEquals(1, approved);
+        FlowMetrics metrics = b.getServices().cordaService(FlowMetrics.class);
+        assertTrue(metrics.get(FlowMetrics.SELECTION_CONFLICTS) >= 1);
+        assertEquals(0, metrics.get(FlowMetrics.NOTARY_CONFLICTS));
+    }
+
+    @Test
+    public void selectionBacksOffAndRetriesWhileTheStateIsLocked() throws Exception {
+        String uid = request(a, b, 100);
+        UUID lockId = lockPendingTransfer(b);
+        CordaFuture<SignedTransaction> future = b.startFlow(new ApproveFlow(uid, 100));
+        FlowMetrics metrics = b.getServices().cordaService(FlowMetrics.class);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (metrics.get(FlowMetrics.SELECTION_CONFLICTS) == 0) {
+            assertTrue("ApproveFlow never ran into the lock", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        b.transaction(() -> {
+            b.getServices().getVaultService().softLockRelease(lockId, null);
+            return null;
+        });
+
+        assertTrue(await(future).getTx().outputsOfType(TransferState.class).get(0).getApprove());
+        assertEquals(0, metrics.get(FlowMetrics.SELECTION_FAILURES));
+    }
+
+    @Test
+    public void selectionGivesUpAfterMaxAttempts() throws Exception {
+        String uid = request(a, b, 100);
+        lockPendingTransfer(b);
+        try {
+            await(b.startFlow(new ApproveFlow(uid, 100)));
+            fail("Approval of a request locked by another flow should have given up");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("in use by a concurrent flow"));
+        }
+
+        Map<String, Long> metrics = await(b.startFlow(new GetFlowMetricsFlow()));
+        // One conflict per attempt, StateSelector.MAX_ATTEMPTS of them, then one failure.
+        assertEquals(Long.valueOf(5), metrics.get(FlowMetrics.SELECTION_CONFLICTS));
+        assertEquals(Long.valueOf(1), metrics.get(FlowMetrics.SELECTION_FAILURES));
+    }
+
+    private void approve(String uid, long amount) throws Exception {
+        CordaFuture<SignedTransaction> future = b.startFlow(new ApproveFlow(uid, amount));
+        network.runNetwork();
+        future.get();
+    }
+
+    // Reserves the only pending transfer in the vault of NODE, as a concurrent flow would.
+    private UUID lockPendingTransfer(StartedMockNode node) {
+        UUID lockId = UUID.randomUUID();
+        node.transaction(() -> {
+            StateAndRef<TransferState> pending = node.getServices().getVaultService().queryBy(TransferState.class).getStates().get(0);
+            node.getServices().getVaultService().softLockReserve(lockId, NonEmptySet.of(pending.getRef()));
+            return null;
+        });
+        return lockId;
+    }
+
+    // Flows that back off sleep on their node's own thread, so the network is pumped until FUTURE completes.
+    private <T> T await(CordaFuture<T> future) throws Exception {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (!future.isDone()) {
+            assertTrue("Flow did not finish in time", System.currentTimeMillis() < deadline);
+            network.runNetwork();
+            Thread.sleep(10);
+        }
+        return future.get();
+    }
+
+    private String request(StartedMockNode requester, StartedMockNode issuer, long amount) throws Exception {
+        CordaFuture<SignedTransaction> future = requester.startFlow(new RequestFlow(issuer.getInfo().getLegalIdentities().get(0), "test", "description", amount));
+        network.runNetwork();
+        return future.get().getTx().outputsOfType(TransferState.class).get(0).getUid();
+    }
+
 }
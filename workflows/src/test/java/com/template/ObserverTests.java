@@ -0,0 +1,103 @@
+package com.template;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.template.flows.ApproveFlow;
+import com.template.flows.RequestFlow;
+import com.template.flows.Utils;
+import com.template.states.TransferState;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class ObserverTests {
+    private static final CordaX500Name OBSERVER = new CordaX500Name("Observer", "London", "GB");
+
+    private final MockNetwork network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+            TestCordapp.findCordapp("com.template.contracts"),
+            TestCordapp.findCordapp("com.template.flows").withConfig(ImmutableMap.of(Utils.OBSERVERS_CONFIG, OBSERVER.toString()))
+    )));
+    private final StartedMockNode a = network.createNode();
+    private final StartedMockNode b = network.createNode();
+    private final StartedMockNode observer = network.createNode(OBSERVER);
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void observerRecordsFinalizedTransfersWithoutTakingPart() throws Exception {
+        Party observerParty = observer.getInfo().getLegalIdentities().get(0);
+        String uid = request(a, b).get().getTx().outputsOfType(TransferState.class).get(0).getUid();
+
+        List<TransferState> requested = transfers(observer, Vault.StateStatus.UNCONSUMED);
+        assertEquals(1, requested.size());
+        assertFalse(requested.get(0).getAllNodes().contains(observerParty));
+        assertFalse(requested.get(0).getParticipants().contains(observerParty));
+
+        CordaFuture<SignedTransaction> approval = b.startFlow(new ApproveFlow(uid, 100));
+        network.runNetwork();
+        approval.get();
+
+        List<TransferState> approved = transfers(observer, Vault.StateStatus.UNCONSUMED);
+        assertEquals(1, approved.size());
+        assertTrue(approved.get(0).getApprove());
+        assertFalse(approved.get(0).getAllNodes().contains(observerParty));
+        assertFalse(approved.get(0).getParticipants().contains(observerParty));
+        assertEquals(1, transfers(observer, Vault.StateStatus.CONSUMED).size());
+    }
+
+    @Test
+    public void observerIsRefusedAsIssuer() throws Exception {
+        assertRefused(request(a, observer));
+    }
+
+    @Test
+    public void observerIsRefusedAsRequester() throws Exception {
+        assertRefused(request(observer, b));
+    }
+
+    private CordaFuture<SignedTransaction> request(StartedMockNode requester, StartedMockNode issuer) {
+        CordaFuture<SignedTransaction> future = requester.startFlow(new RequestFlow(issuer.getInfo().getLegalIdentities().get(0), "test", "description", 120));
+        network.runNetwork();
+        return future;
+    }
+
+    private static void assertRefused(CordaFuture<SignedTransaction> future) throws InterruptedException {
+        try {
+            future.get();
+            fail("A transfer involving an observer should have been refused");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("Observer nodes do not take part in transfers!"));
+        }
+    }
+
+    private static List<TransferState> transfers(StartedMockNode node, Vault.StateStatus status) {
+        List<TransferState> transfers = new ArrayList<>();
+        node.getServices().getVaultService().queryBy(TransferState.class, new QueryCriteria.VaultQueryCriteria(status))
+                .getStates().forEach(stateAndRef -> transfers.add(stateAndRef.getState().getData()));
+        return transfers;
+    }
+}
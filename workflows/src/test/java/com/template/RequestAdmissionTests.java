@@ -0,0 +1,94 @@
+package com.template;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.template.flows.FlowMetrics;
+import com.template.flows.RequestAdmission;
+import com.template.flows.RequestFlow;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class RequestAdmissionTests {
+    private MockNetwork network;
+    private StartedMockNode a;
+    private StartedMockNode b;
+    private StartedMockNode c;
+
+    // Starts a network whose nodes admit requests according to CONFIG.
+    private void start(Map<String, Object> config) {
+        network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+                TestCordapp.findCordapp("com.template.contracts"),
+                TestCordapp.findCordapp("com.template.flows").withConfig(config)
+        )));
+        a = network.createNode();
+        b = network.createNode();
+        c = network.createNode();
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        if (network != null) network.stopNodes();
+    }
+
+    @Test
+    public void issuerThrottlesEachRequesterSeparately() throws Exception {
+        // One request per requester, refilled far slower than the test runs.
+        start(ImmutableMap.<String, Object>of(RequestAdmission.RATE_CONFIG, 0.001, RequestAdmission.BURST_CONFIG, 1));
+        request(a).get();
+        try {
+            request(a).get();
+            fail("Second request within the burst should have been throttled");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("Too many requests"));
+        }
+        // Another requester has its own bucket.
+        request(c).get();
+
+        assertEquals(1, b.getServices().cordaService(FlowMetrics.class).get(FlowMetrics.REQUESTS_THROTTLED));
+    }
+
+    @Test
+    public void issuerSignsAtMostMaxPendingRequestsOfARequesterAtOnce() throws Exception {
+        start(ImmutableMap.<String, Object>of(RequestAdmission.MAX_PENDING_CONFIG, 1));
+        // Both requests reach the issuer before either is signed.
+        CordaFuture<SignedTransaction> first = a.startFlow(newRequest());
+        CordaFuture<SignedTransaction> second = a.startFlow(newRequest());
+        network.runNetwork();
+
+        int rejected = 0;
+        for (CordaFuture<SignedTransaction> future : ImmutableList.of(first, second)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause().getMessage().contains("Too many pending requests"));
+                rejected++;
+            }
+        }
+        assertEquals(1, rejected);
+        assertEquals(1, b.getServices().cordaService(FlowMetrics.class).get(FlowMetrics.REQUESTS_REJECTED_PENDING));
+        // The pending request is released once signed, and the next one is admitted.
+        request(a).get();
+    }
+
+    private RequestFlow newRequest() {
+        return new RequestFlow(b.getInfo().getLegalIdentities().get(0), "test", "description", 120);
+    }
+
+    private CordaFuture<SignedTransaction> request(StartedMockNode requester) {
+        CordaFuture<SignedTransaction> future = requester.startFlow(newRequest());
+        network.runNetwork();
+        return future;
+    }
+}